@@ -0,0 +1,31 @@
+package enigma;
+
+import java.io.IOException;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/** Runs the benchmarks with the usual JMH command-line options, always
+ *  adding the allocation profiler (-prof gc).
+ *  @author Mohak Buch
+ */
+public final class Benchmarks {
+
+    /** Run the benchmarks selected by ARGS, as for org.openjdk.jmh.Main. */
+    public static void main(String... args)
+        throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListProfilers()
+            || cmd.shouldListWithParams() || cmd.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(cmd)
+                   .addProfiler(GCProfiler.class).build()).run();
+    }
+
+}
@@ -0,0 +1,78 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of CribDrag over a long ciphertext, comparing offsets one
+ *  at a time and through its vector filter, which the forked JVM is
+ *  given the vector module to load.  Scores are scans of the whole ciphertext per second.
+ *  @author Mohak Buch
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+@State(Scope.Thread)
+public class CribDragBenchmark {
+
+    /** Number of characters in the ciphertext. */
+    @Param({ "4194304" })
+    public int textLen;
+
+    /** Number of characters in the crib. */
+    @Param({ "12", "30" })
+    public int cribLen;
+
+    /** The ciphertext, as alphabet indices. */
+    private byte[] _cipher;
+
+    /** The crib, as alphabet indices. */
+    private byte[] _crib;
+
+    /** Build the ciphertext and crib. */
+    @Setup
+    public void setUp() {
+        Alphabet alphabet = new Alphabet(Fixtures.alphabet(26));
+        byte[] text = indices(alphabet, Fixtures.message(26, 2 * textLen));
+        _cipher = Arrays.copyOf(text, textLen);
+        _crib = Arrays.copyOfRange(text, text.length - cribLen, text.length);
+    }
+
+    /** Returns the alphabet indices of the characters of TEXT that are in
+     *  ALPHABET. */
+    private static byte[] indices(Alphabet alphabet, String text) {
+        byte[] result = new byte[text.length()];
+        int len = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            int c = alphabet.toInt(text.charAt(i));
+            if (c >= 0) {
+                result[len++] = (byte) c;
+            }
+        }
+        return Arrays.copyOf(result, len);
+    }
+
+    @Benchmark
+    public int[] scalar() {
+        return CribDrag.offsets(_cipher, _crib, 0);
+    }
+
+    @Benchmark
+    public int[] vector() {
+        return CribDrag.offsets(_cipher, _crib);
+    }
+
+}
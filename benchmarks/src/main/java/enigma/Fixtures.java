@@ -0,0 +1,144 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Generated machines, configurations and messages for the benchmarks.
+ *  A machine of N rotors has a reflector, one fixed rotor and N-2 moving
+ *  rotors, all with random wirings drawn from a fixed seed, so that every
+ *  run of a benchmark sees the same machine.
+ *  @author Mohak Buch
+ */
+final class Fixtures {
+
+    /** Seed for all the random wirings and messages. */
+    static final long SEED = 0x5EED;
+
+    /** Returns an alphabet of SIZE letters, starting with "A" to "Z". */
+    static String alphabet(int size) {
+        StringBuilder chars = new StringBuilder();
+        for (char c = 'A'; chars.length() < size; c += 1) {
+            if (Character.isLetter(c)) {
+                chars.append(c);
+            }
+        }
+        return chars.toString();
+    }
+
+    /** Returns the text of a configuration file for a machine of
+     *  NUMROTORS rotors over an alphabet of ALPHASIZE letters. */
+    static String config(int alphaSize, int numRotors) {
+        String alpha = alphabet(alphaSize);
+        Random random = new Random(SEED);
+        StringBuilder conf = new StringBuilder();
+        conf.append(alpha).append('\n');
+        conf.append(numRotors).append(' ').append(numRotors - 2).append('\n');
+        conf.append(" REFL R ").append(cycles(alpha, random, true))
+            .append('\n');
+        conf.append(" FIXED N ").append(cycles(alpha, random, false))
+            .append('\n');
+        for (int i = 0; i < numRotors - 2; i += 1) {
+            conf.append(" M").append(i).append(" M").append(alpha.charAt(i))
+                .append(' ').append(cycles(alpha, random, false))
+                .append('\n');
+        }
+        return conf.toString();
+    }
+
+    /** Returns the settings line selecting all the rotors of
+     *  config(ALPHASIZE, NUMROTORS), with a plugboard swapping the first
+     *  two letters. */
+    static String settings(int alphaSize, int numRotors) {
+        String alpha = alphabet(alphaSize);
+        StringBuilder line = new StringBuilder("* REFL FIXED");
+        for (int i = 0; i < numRotors - 2; i += 1) {
+            line.append(" M").append(i);
+        }
+        line.append(' ');
+        for (int i = 1; i < numRotors; i += 1) {
+            line.append(alpha.charAt(i));
+        }
+        line.append(" (").append(alpha, 0, 2).append(')');
+        return line.toString();
+    }
+
+    /** Returns a machine built from config(ALPHASIZE, NUMROTORS) and set up
+     *  as by settings(ALPHASIZE, NUMROTORS). */
+    static Machine machine(int alphaSize, int numRotors) {
+        String alpha = alphabet(alphaSize);
+        Alphabet alphabet = new Alphabet(alpha);
+        Random random = new Random(SEED);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[numRotors];
+        names[0] = "REFL";
+        rotors.add(new Reflector(names[0], new Permutation(
+            cycles(alpha, random, true), alphabet)));
+        names[1] = "FIXED";
+        rotors.add(new FixedRotor(names[1], new Permutation(
+            cycles(alpha, random, false), alphabet)));
+        for (int i = 0; i < numRotors - 2; i += 1) {
+            names[i + 2] = "M" + i;
+            rotors.add(new MovingRotor(names[i + 2], new Permutation(
+                cycles(alpha, random, false), alphabet),
+                alpha.substring(i, i + 1)));
+        }
+        Machine mach = new Machine(alphabet, numRotors, numRotors - 2, rotors);
+        mach.insertRotors(names);
+        mach.setRotors(alpha.substring(1, numRotors));
+        mach.setPlugboard(new Permutation("(" + alpha.substring(0, 2) + ")",
+                                          alphabet));
+        return mach;
+    }
+
+    /** Returns a message of LEN characters over an alphabet of ALPHASIZE
+     *  letters, with a blank after roughly every fifth letter. */
+    static String message(int alphaSize, int len) {
+        String alpha = alphabet(alphaSize);
+        Random random = new Random(SEED);
+        char[] msg = new char[len];
+        for (int i = 0; i < len; i += 1) {
+            msg[i] = random.nextInt(6) == 0 ? ' '
+                : alpha.charAt(random.nextInt(alphaSize));
+        }
+        return new String(msg);
+    }
+
+    /** Write TEXT to the file FILE in the default charset. */
+    static void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(Charset.defaultCharset()));
+    }
+
+    /** Returns a random permutation of the letters of ALPHA in cycle
+     *  notation, drawn from RANDOM.  If INVOLUTION, it consists only of
+     *  2-cycles, as for a reflector. */
+    private static String cycles(String alpha, Random random,
+                                 boolean involution) {
+        char[] chars = alpha.toCharArray();
+        for (int i = chars.length - 1; i > 0; i -= 1) {
+            int j = random.nextInt(i + 1);
+            char t = chars[i];
+            chars[i] = chars[j];
+            chars[j] = t;
+        }
+        StringBuilder result = new StringBuilder();
+        if (involution) {
+            for (int i = 0; i + 1 < chars.length; i += 2) {
+                result.append('(').append(chars[i]).append(chars[i + 1])
+                    .append(')');
+            }
+        } else {
+            int start = 0;
+            while (start < chars.length) {
+                int len = 1 + random.nextInt(chars.length - start);
+                result.append('(').append(chars, start, len).append(')');
+                start += len;
+            }
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,105 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Machine.convert on single characters, for various
+ *  numbers of rotors and alphabet sizes, and on whole messages of various
+ *  lengths.
+ *  @author Mohak Buch
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBenchmark {
+
+    /** A machine converting single characters. */
+    @State(Scope.Thread)
+    public static class Chars {
+
+        /** Number of characters in the alphabet. */
+        @Param({ "26", "64", "256" })
+        public int alphaSize;
+
+        /** Number of rotors in the machine. */
+        @Param({ "3", "5", "8" })
+        public int numRotors;
+
+        /** The machine. */
+        Machine mach;
+
+        /** Last result, and next argument. */
+        int c;
+
+        /** Build the machine. */
+        @Setup
+        public void setUp() {
+            mach = Fixtures.machine(alphaSize, numRotors);
+        }
+    }
+
+    /** A machine converting whole messages. */
+    @State(Scope.Thread)
+    public static class Messages {
+
+        /** Number of characters in each message. */
+        @Param({ "16", "1024", "65536" })
+        public int length;
+
+        /** The machine. */
+        Machine mach;
+
+        /** The message. */
+        String msg;
+
+        /** Build the machine and message. */
+        @Setup
+        public void setUp() {
+            mach = Fixtures.machine(26, 5);
+            msg = Fixtures.message(26, length);
+        }
+    }
+
+    /** Count of message characters converted, reported per second. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+
+        /** Characters converted in this iteration. */
+        public long bytes;
+
+        /** Start a new iteration. */
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Benchmark
+    public int convertChar(Chars state) {
+        state.c = state.mach.convert(state.c);
+        return state.c;
+    }
+
+    @Benchmark
+    public String convertMessage(Messages state, Bytes bytes) {
+        bytes.bytes += state.length;
+        return state.mach.convert(state.msg);
+    }
+
+}
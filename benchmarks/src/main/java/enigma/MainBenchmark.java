@@ -0,0 +1,140 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Main: parsing configuration files, loading them from
+ *  their compiled caches, and running whole input files through
+ *  Main.process.  Main reads files in the default
+ *  charset, which is fixed as UTF-8 so that the generated alphabets
+ *  beyond "A-Za-z" survive the round trip.
+ *  @author Mohak Buch
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dfile.encoding=UTF-8")
+@State(Scope.Benchmark)
+public class MainBenchmark {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "256" })
+    public int alphaSize;
+
+    /** Number of rotors in the machine. */
+    @Param({ "5" })
+    public int numRotors;
+
+    /** Count of input characters processed, reported per second. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+
+        /** Characters processed in this iteration. */
+        public long bytes;
+
+        /** Start a new iteration. */
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    /** An input file of messages for process, and its output file. */
+    @State(Scope.Benchmark)
+    public static class Input {
+
+        /** Number of characters in the input file. */
+        @Param({ "65536", "16777216" })
+        public int inputSize;
+
+        /** Names of the input and output files. */
+        String input, output;
+
+        /** Number of characters actually written to the input file. */
+        long length;
+
+        /** Write the input file for the machine configured by BENCH. */
+        @Setup
+        public void setUp(MainBenchmark bench) throws IOException {
+            input = bench._dir.resolve("bench.in").toString();
+            output = bench._dir.resolve("bench.out").toString();
+            StringBuilder text = new StringBuilder();
+            text.append(Fixtures.settings(bench.alphaSize, bench.numRotors))
+                .append('\n');
+            String line = Fixtures.message(bench.alphaSize, 79);
+            while (text.length() < inputSize) {
+                text.append(line).append('\n');
+            }
+            Fixtures.write(Path.of(input), text.toString());
+            length = text.length();
+        }
+
+        /** Remove the input and output files. */
+        @TearDown
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(Path.of(input));
+            Files.deleteIfExists(Path.of(output));
+        }
+    }
+
+    /** Write the configuration file, and compile it into its cache. */
+    @Setup
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("enigma-bench");
+        _config = _dir.resolve("bench.conf").toString();
+        Fixtures.write(Path.of(_config),
+                       Fixtures.config(alphaSize, numRotors));
+        new Main(new String[] { _config }).readConfig();
+    }
+
+    /** Remove the files written by setUp. */
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(ConfigCache.cacheFor(Path.of(_config)));
+        Files.deleteIfExists(Path.of(_config));
+        Files.deleteIfExists(_dir);
+    }
+
+    @Benchmark
+    public MachineSpec parseConfig() {
+        return new Main(new String[] { _config }).parseConfig();
+    }
+
+    @Benchmark
+    public Machine loadConfig() {
+        return new Main(new String[] { _config }).readConfig();
+    }
+
+    @Benchmark
+    public void process(Input input, Bytes bytes) {
+        new Main(new String[] { _config, input.input, input.output })
+            .process();
+        bytes.bytes += input.length;
+    }
+
+    /** Directory holding the generated files. */
+    private Path _dir;
+
+    /** Name of the configuration file. */
+    private String _config;
+
+}
@@ -0,0 +1,91 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the single-character operations of Permutation,
+ *  Alphabet and Rotor.  Each feeds its result back in as its next
+ *  argument, so it measures the latency of one call.
+ *  @author Mohak Buch
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrimitivesBenchmark {
+
+    /** Number of characters in the alphabet. */
+    @Param({ "26", "64", "256" })
+    public int alphaSize;
+
+    /** Characters of the alphabet. */
+    private String _chars;
+
+    /** Alphabet of the permutation and rotor. */
+    private Alphabet _alphabet;
+
+    /** A random permutation of the alphabet. */
+    private Permutation _perm;
+
+    /** A moving rotor with wiring _perm. */
+    private Rotor _rotor;
+
+    /** Last result, and next argument. */
+    private int _x;
+
+    /** Build the alphabet, permutation and rotor. */
+    @Setup
+    public void setUp() {
+        _chars = Fixtures.alphabet(alphaSize);
+        _alphabet = new Alphabet(_chars);
+        _perm = new Permutation("(" + _chars + ")", _alphabet);
+        _rotor = new MovingRotor("R", _perm, _chars.substring(0, 1));
+        _rotor.set(alphaSize / 3);
+        _x = 0;
+    }
+
+    @Benchmark
+    public int permute() {
+        _x = _perm.permute(_x);
+        return _x;
+    }
+
+    @Benchmark
+    public int invert() {
+        _x = _perm.invert(_x);
+        return _x;
+    }
+
+    @Benchmark
+    public int alphabetToInt() {
+        _x = _alphabet.toInt(_chars.charAt(_x));
+        _x = _x + 1 == alphaSize ? 0 : _x + 1;
+        return _x;
+    }
+
+    @Benchmark
+    public int convertForward() {
+        _x = _rotor.convertForward(_x);
+        return _x;
+    }
+
+    @Benchmark
+    public int convertBackward() {
+        _x = _rotor.convertBackward(_x);
+        return _x;
+    }
+
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *
@@ -16,13 +18,26 @@ class Alphabet {
         if (_chars.length() == 0) {
             throw new EnigmaException("No Alphabets");
         }
+        char lo = _chars.charAt(0), hi = lo;
+        for (int i = 1; i < _chars.length(); i++) {
+            lo = (char) Math.min(lo, _chars.charAt(i));
+            hi = (char) Math.max(hi, _chars.charAt(i));
+        }
+        int span = hi - lo + 1;
+        if (_chars.length() <= Short.MAX_VALUE
+            && span <= Math.max(DENSE_SPAN, DENSE_FACTOR * _chars.length())) {
+            _base = lo;
+            _dense = new short[span];
+            Arrays.fill(_dense, (short) -1);
+        } else {
+            int capacity = Integer.highestOneBit(2 * _chars.length() - 1) << 1;
+            _keys = new char[capacity];
+            _values = new int[capacity];
+            Arrays.fill(_values, -1);
+        }
         for (int i = 0; i < _chars.length(); i++) {
-            for (int j = 0; j < _chars.length(); j++) {
-                boolean b = (i != j);
-                if (b && _chars.charAt(i) == _chars.charAt(j)) {
-                    throw new EnigmaException("No duplicate chars allowed");
-
-                }
+            if (!add(_chars.charAt(i), i)) {
+                throw new EnigmaException("No duplicate chars allowed");
             }
         }
     }
@@ -39,12 +54,17 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
+        return toInt(ch) >= 0;
+    }
+
+    /** Returns true iff all my characters are 7-bit ASCII. */
+    boolean isAscii() {
         for (int i = 0; i < _chars.length(); i++) {
-            if (_chars.charAt(i) == ch) {
-                return true;
+            if (_chars.charAt(i) >= 0x80) {
+                return false;
             }
         }
-        return false;
+        return true;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -58,12 +78,73 @@ class Alphabet {
      * @return index of char ch which must be in alphabet
      *  */
     int toInt(char ch) {
-        return this._chars.indexOf(ch);
+        if (_dense != null) {
+            int k = ch - _base;
+            if (k < 0 || k >= _dense.length) {
+                return -1;
+            }
+            return _dense[k];
+        }
+        int mask = _keys.length - 1;
+        for (int h = hash(ch) & mask; _values[h] >= 0; h = (h + 1) & mask) {
+            if (_keys[h] == ch) {
+                return _values[h];
+            }
+        }
+        return -1;
+    }
+
+    /** Record that CH has index INDEX in my reverse index.  Returns false
+     *  if CH is already present. */
+    private boolean add(char ch, int index) {
+        if (_dense != null) {
+            if (_dense[ch - _base] >= 0) {
+                return false;
+            }
+            _dense[ch - _base] = (short) index;
+            return true;
+        }
+        int mask = _keys.length - 1;
+        int h = hash(ch) & mask;
+        for (; _values[h] >= 0; h = (h + 1) & mask) {
+            if (_keys[h] == ch) {
+                return false;
+            }
+        }
+        _keys[h] = ch;
+        _values[h] = index;
+        return true;
+    }
+
+    /** Return a well-mixed hash of CH for the open-addressed index. */
+    private static int hash(char ch) {
+        return (ch * 0x9E3779B1) >>> 15;
     }
 
+    /** Alphabets whose characters span at most this many code points
+     *  always use a dense reverse index. */
+    private static final int DENSE_SPAN = 1 << 12;
+
+    /** Alphabets whose characters span at most this many code points per
+     *  character also use a dense reverse index. */
+    private static final int DENSE_FACTOR = 16;
+
     /**
      * @return
      */
     private String _chars;
 
+    /** Dense reverse index: _dense[C - _base] is the index of C, or -1.
+     *  Null when the open-addressed index is used instead. */
+    private short[] _dense;
+
+    /** Smallest character in a dense alphabet. */
+    private char _base;
+
+    /** Open-addressed reverse index keys, used for sparse alphabets. */
+    private char[] _keys;
+
+    /** Index of the character in the same slot of _keys, or -1 if empty. */
+    private int[] _values;
+
 }
@@ -0,0 +1,448 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A search for the rotors, settings and plugboard of a message, given a
+ *  crib: a stretch of its plaintext and where it lies in the ciphertext.
+ *  Like Turing's Bombe, it does not decrypt anything.  Each position of
+ *  the crib says that the plugboard P and the rotors' mapping S at that
+ *  keystroke take the crib character to the ciphertext character:
+ *  C = P(S(P(A))), so P(C) = S(P(A)) and P(A) = S(P(C)).  Those pairs
+ *  form the menu, a graph on the characters.  For each rotor order and
+ *  setting, the search assumes a partner for the menu's best connected
+ *  character and propagates what that implies along the menu, and the
+ *  plugboard's symmetry, until some character would need two partners,
+ *  which rejects the assumption, or nothing new follows, which is a stop:
+ *  a candidate key together with the plug pairs it implies.
+ *
+ *  What is known of the plugboard is kept as a bitset per character over
+ *  the alphabet, plus a bitset of the characters whose partner is known.
+ *  The rotor orders are tried in parallel.
+ *  @author Mohak Buch
+ */
+class Bombe {
+
+    /** Run a search as described by ARGS: CONFIG CIPHERTEXT CRIB [OFFSET
+     *  [ROTORS]], where CONFIG is a configuration file, CIPHERTEXT a file
+     *  holding the message, CRIB the known plaintext, OFFSET the number
+     *  of ciphertext characters before it (default 0), or "*" for every
+     *  offset CribDrag allows, and ROTORS the names of the leftmost
+     *  rotors to fix, separated by blanks.  Prints each stop as a
+     *  settings line and then the search rate. */
+    public static void main(String... args) {
+        if (args.length < 3 || args.length > 5) {
+            System.err.println("Usage: java enigma.Bombe CONFIG CIPHERTEXT "
+                               + "CRIB [OFFSET [ROTORS]]");
+            System.exit(1);
+        }
+        try {
+            MachineSpec spec =
+                new Main(new String[] { args[0] }).readConfig().spec();
+            String cipher = new String(Files.readAllBytes(Paths.get(args[1])));
+            int[] offsets;
+            if (args.length < 4) {
+                offsets = new int[] { 0 };
+            } else if (args[3].equals("*")) {
+                offsets = new CribDrag(spec.alphabet(), cipher)
+                    .offsets(args[2]);
+                System.err.printf("%d possible offsets%n", offsets.length);
+            } else {
+                offsets = new int[] { Integer.parseInt(args[3]) };
+            }
+            String[] rotors = args.length > 4 ? args[4].trim().split("\\s+")
+                : new String[0];
+            for (int offset : offsets) {
+                Bombe bombe = new Bombe(spec, cipher, args[2], offset, rotors);
+                for (Stop stop : bombe.run(
+                         Runtime.getRuntime().availableProcessors())) {
+                    System.out.println(stop);
+                }
+                System.err.printf("offset %d: %s%n", offset, bombe.report());
+            }
+        } catch (EnigmaException | IOException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A search for the key of CIPHERTEXT among the machines described by
+     *  SPEC whose leftmost rotors are named ROTORS, given that the
+     *  plaintext starting after the first OFFSET characters of
+     *  CIPHERTEXT is CRIB.  Characters of CIPHERTEXT and CRIB outside the
+     *  alphabet are ignored. */
+    Bombe(MachineSpec spec, String ciphertext, String crib, int offset,
+          String[] rotors) {
+        _spec = spec;
+        Alphabet alphabet = spec.alphabet();
+        int n = alphabet.size();
+        int[] cipher = indices(alphabet, ciphertext);
+        _crib = indices(alphabet, crib);
+        int len = _crib.length;
+        if (len == 0) {
+            throw error("empty crib");
+        } else if (offset < 0 || offset > cipher.length - len) {
+            throw error("crib does not fit at offset %d", offset);
+        }
+        _offset = offset;
+        _cribCipher = Arrays.copyOfRange(cipher, offset, offset + len);
+        for (int t = 0; t < len; t += 1) {
+            if (_crib[t] == _cribCipher[t]) {
+                throw error("crib character %c encrypts to itself at "
+                            + "position %d", alphabet.toChar(_crib[t]),
+                            offset + t);
+            }
+        }
+        _edgeStart = new int[n + 1];
+        for (int t = 0; t < len; t += 1) {
+            _edgeStart[_crib[t] + 1] += 1;
+            _edgeStart[_cribCipher[t] + 1] += 1;
+        }
+        int testLetter = 0;
+        for (int c = 0; c < n; c += 1) {
+            if (_edgeStart[c + 1] > _edgeStart[testLetter + 1]) {
+                testLetter = c;
+            }
+        }
+        _testLetter = testLetter;
+        for (int c = 0; c < n; c += 1) {
+            _edgeStart[c + 1] += _edgeStart[c];
+        }
+        _edgeOther = new int[2 * len];
+        _edgePosition = new int[2 * len];
+        int[] fill = Arrays.copyOf(_edgeStart, n);
+        for (int t = 0; t < len; t += 1) {
+            int a = _crib[t], c = _cribCipher[t];
+            _edgeOther[fill[a]] = c;
+            _edgePosition[fill[a]++] = t;
+            _edgeOther[fill[c]] = a;
+            _edgePosition[fill[c]++] = t;
+        }
+        _orders = KeySearch.rotorOrders(spec, rotors);
+        long settings = 1;
+        for (int i = 1; i < spec.numRotors(); i += 1) {
+            if (settings > Long.MAX_VALUE / n / Math.max(1, _orders.size())) {
+                throw error("too many settings to search");
+            }
+            settings *= n;
+        }
+        _settings = settings;
+    }
+
+    /** Returns the characters of TEXT in ALPHABET, as indices. */
+    private static int[] indices(Alphabet alphabet, String text) {
+        int[] result = new int[text.length()];
+        int len = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            int c = alphabet.toInt(text.charAt(i));
+            if (c >= 0) {
+                result[len++] = c;
+            }
+        }
+        return Arrays.copyOf(result, len);
+    }
+
+    /** Returns the number of rotor orders and settings a run tries. */
+    long candidates() {
+        return _orders.size() * _settings;
+    }
+
+    /** Try every rotor order and setting, spreading the rotor orders over
+     *  THREADS threads, and return the stops, in order of rotor order and
+     *  then setting. */
+    List<Stop> run(int threads) {
+        if (threads <= 0) {
+            throw error("thread count must be positive");
+        }
+        List<Callable<List<Stop>>> tasks = new ArrayList<>();
+        for (int k = 0; k < _orders.size(); k += 1) {
+            int order = k;
+            tasks.add(() -> new Worker(order).run());
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        List<Stop> stops = new ArrayList<>();
+        try {
+            for (Future<List<Stop>> result : pool.invokeAll(tasks)) {
+                stops.addAll(result.get());
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new RuntimeException(excp.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        _elapsed = System.nanoTime() - start;
+        _threads = threads;
+        _stops = stops.size();
+        return stops;
+    }
+
+    /** Returns a summary of the speed of the last run. */
+    String report() {
+        double seconds = _elapsed / 1e9;
+        return String.format(
+            "%d candidates with a %d-character crib in %.3f s on %d "
+            + "threads: %d stops, %.0f candidates/s",
+            candidates(), _crib.length, seconds, _threads, _stops,
+            candidates() / seconds);
+    }
+
+    /** The search of one rotor order, with its own machine and scratch
+     *  space. */
+    private final class Worker {
+
+        /** A search of rotor order number ORDER. */
+        Worker(int order) {
+            int n = _spec.alphabet().size();
+            int words = (n + 63) >>> 6;
+            _names = new String[_spec.numRotors()];
+            for (int i = 0; i < _names.length; i += 1) {
+                _names[i] = _spec.name(_orders.get(order)[i]);
+            }
+            _machine = new Machine(_spec);
+            _machine.insertRotors(_names);
+            _setting = new int[_spec.numRotors() - 1];
+            _scramblers = new int[_crib.length * n];
+            _partners = new long[n * words];
+            _known = new long[words];
+            _facts = new int[n];
+        }
+
+        /** Returns the stops for my rotor order. */
+        List<Stop> run() {
+            int n = _spec.alphabet().size();
+            List<Stop> stops = new ArrayList<>();
+            for (long p = 0; p < _settings; p += 1) {
+                long q = p;
+                for (int i = _setting.length - 1; i >= 0; i -= 1) {
+                    _setting[i] = (int) (q % n);
+                    q /= n;
+                }
+                _machine.setRotors(_setting);
+                _machine.advance(_offset);
+                _machine.scramblers(_scramblers, _crib.length);
+                for (int x = 0; x < n; x += 1) {
+                    if (propagate(_testLetter, x)) {
+                        stops.add(stop());
+                    }
+                    clear();
+                }
+            }
+            return stops;
+        }
+
+        /** Assume that the plugboard pairs A with X, and follow the menu
+         *  from there.  Returns false if that leads to a contradiction,
+         *  and true if it does not, leaving what follows in _partners. */
+        private boolean propagate(int a, int x) {
+            int n = _spec.alphabet().size();
+            if (!assume(a, x)) {
+                return false;
+            }
+            for (int head = 0; head < _count; head += 1) {
+                int c = _facts[head] / n, y = _facts[head] % n;
+                for (int e = _edgeStart[c]; e < _edgeStart[c + 1]; e += 1) {
+                    int z = _scramblers[_edgePosition[e] * n + y];
+                    if (!assume(_edgeOther[e], z)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Record that the plugboard pairs A with Y, and so Y with A.
+         *  Returns false iff either already has another partner. */
+        private boolean assume(int a, int y) {
+            return assumeOne(a, y) && assumeOne(y, a);
+        }
+
+        /** Record that the plugboard takes A to Y.  Returns false iff A
+         *  already goes elsewhere. */
+        private boolean assumeOne(int a, int y) {
+            int words = _known.length;
+            long bit = 1L << y;
+            int word = a * words + (y >>> 6);
+            if ((_partners[word] & bit) != 0) {
+                return true;
+            } else if ((_known[a >>> 6] & (1L << a)) != 0) {
+                return false;
+            }
+            _partners[word] |= bit;
+            _known[a >>> 6] |= 1L << a;
+            _facts[_count++] = a * _spec.alphabet().size() + y;
+            return true;
+        }
+
+        /** Forget everything recorded since the last call. */
+        private void clear() {
+            int n = _spec.alphabet().size(), words = _known.length;
+            for (int k = 0; k < _count; k += 1) {
+                int a = _facts[k] / n, y = _facts[k] % n;
+                _partners[a * words + (y >>> 6)] = 0;
+                _known[a >>> 6] &= ~(1L << a);
+            }
+            _count = 0;
+        }
+
+        /** Returns the stop at my current setting, with the plug pairs in
+         *  _partners. */
+        private Stop stop() {
+            Alphabet alphabet = _spec.alphabet();
+            int n = alphabet.size(), words = _known.length;
+            StringBuilder plugboard = new StringBuilder();
+            for (int a = 0; a < n; a += 1) {
+                if ((_known[a >>> 6] & (1L << a)) == 0) {
+                    continue;
+                }
+                int y = 0;
+                while (_partners[a * words + (y >>> 6)] == 0) {
+                    y += 64;
+                }
+                y += Long.numberOfTrailingZeros(
+                    _partners[a * words + (y >>> 6)]);
+                if (y > a) {
+                    if (plugboard.length() > 0) {
+                        plugboard.append(' ');
+                    }
+                    plugboard.append('(').append(alphabet.toChar(a))
+                        .append(alphabet.toChar(y)).append(')');
+                }
+            }
+            char[] setting = new char[_setting.length];
+            for (int i = 0; i < setting.length; i += 1) {
+                setting[i] = alphabet.toChar(_setting[i]);
+            }
+            return new Stop(_names, new String(setting),
+                            plugboard.toString());
+        }
+
+        /** Names of the rotors in my order. */
+        private final String[] _names;
+
+        /** My machine. */
+        private final Machine _machine;
+
+        /** Setting being tried, as alphabet indices. */
+        private final int[] _setting;
+
+        /** Rotor mappings at each crib position, as from
+         *  Machine.scramblers. */
+        private final int[] _scramblers;
+
+        /** Bitset per character of the partners it is known to have. */
+        private final long[] _partners;
+
+        /** Bitset of the characters with a known partner. */
+        private final long[] _known;
+
+        /** Facts recorded in _partners, as A * N + Y, in order; there is
+         *  at most one per character. */
+        private final int[] _facts;
+
+        /** Number of facts recorded. */
+        private int _count;
+
+    }
+
+    /** A candidate key: rotors, setting and the plug pairs implied. */
+    static final class Stop {
+
+        /** A stop with rotors ROTORS at SETTING and plug pairs PLUGBOARD,
+         *  in cycle notation. */
+        Stop(String[] rotors, String setting, String plugboard) {
+            _rotors = rotors;
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Returns my rotor settings, as for Machine.setRotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Returns the plug pairs I imply, in cycle notation.  Characters
+         *  not in the menu, or found to be unplugged, are not listed. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Returns the settings line that selects me. */
+        String settingsLine() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting;
+            return _plugboard.isEmpty() ? line : line + " " + _plugboard;
+        }
+
+        @Override
+        public String toString() {
+            return settingsLine();
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+
+        /** My rotor settings. */
+        private final String _setting;
+
+        /** My plug pairs. */
+        private final String _plugboard;
+
+    }
+
+    /** The machines searched. */
+    private final MachineSpec _spec;
+
+    /** The crib, as alphabet indices. */
+    private final int[] _crib;
+
+    /** The ciphertext under the crib, as alphabet indices. */
+    private final int[] _cribCipher;
+
+    /** Number of ciphertext characters before the crib. */
+    private final int _offset;
+
+    /** The menu's edges from character C are numbered _edgeStart[C] ..
+     *  _edgeStart[C + 1] - 1. */
+    private final int[] _edgeStart;
+
+    /** _edgeOther[E] is the character at the other end of edge E. */
+    private final int[] _edgeOther;
+
+    /** _edgePosition[E] is the crib position of edge E. */
+    private final int[] _edgePosition;
+
+    /** The character whose partner is guessed. */
+    private final int _testLetter;
+
+    /** Rotor orders searched, as rotor numbers in _spec. */
+    private final List<int[]> _orders;
+
+    /** Number of settings of each rotor order. */
+    private final long _settings;
+
+    /** Number of threads used by the last run. */
+    private int _threads;
+
+    /** Number of stops found by the last run. */
+    private int _stops;
+
+    /** Duration of the last run, in nanoseconds. */
+    private long _elapsed;
+
+}
@@ -0,0 +1,54 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Mohak Buch
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void checkFindsKey() {
+        MachineSpec spec = KeySearchTest.smallSpec();
+        Machine mach = new Machine(spec);
+        mach.insertRotors("C IV II".split(" "));
+        mach.setRotors("QF");
+        mach.setPlugboard("(AE) (HQ) (IP) (RT) (SW)", 0, 24);
+        String cipher = mach.convert(KeySearchTest.PLAIN);
+        String crib = "ASKMEWHENCETHESESTORIESWHENCETHESE";
+        Bombe bombe = new Bombe(spec, cipher, crib, 9, new String[0]);
+        List<Bombe.Stop> stops = bombe.run(2);
+        Bombe.Stop found = null;
+        for (Bombe.Stop stop : stops) {
+            if (stop.settingsLine().startsWith("* C IV II QF ")) {
+                found = stop;
+            }
+        }
+        assertNotNull(found);
+        for (String pair : found.plugboard().split(" ")) {
+            assertTrue(pair, "(AE) (HQ) (IP) (RT) (SW)".contains(pair));
+        }
+        assertTrue(stops.size() < 20);
+    }
+
+    @Test
+    public void checkRejectsImpossibleCrib() {
+        MachineSpec spec = KeySearchTest.smallSpec();
+        try {
+            new Bombe(spec, "XYZZY", "YZ", 1, new String[0]);
+            fail("accepted a crib letter encrypting to itself");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("position 1"));
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/** A Writer of 7-bit ASCII text that narrows each character straight into
+ *  a direct buffer and writes the buffer to a channel when it fills,
+ *  with no intermediate Strings or encoder.  Characters outside ASCII
+ *  are written as '?', as an ASCII encoder would.
+ *  @author Mohak Buch
+ */
+class ChannelWriter extends Writer {
+
+    /** A writer to CHANNEL. */
+    ChannelWriter(WritableByteChannel channel) {
+        _channel = channel;
+        _buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (!_buf.hasRemaining()) {
+            drain();
+        }
+        _buf.put(narrow((char) c));
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!_buf.hasRemaining()) {
+                drain();
+            }
+            int p = _buf.position();
+            int n = Math.min(len, _buf.limit() - p);
+            for (int i = 0; i < n; i += 1) {
+                _buf.put(p + i, narrow(cbuf[off + i]));
+            }
+            _buf.position(p + n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!_buf.hasRemaining()) {
+                drain();
+            }
+            int p = _buf.position();
+            int n = Math.min(len, _buf.limit() - p);
+            for (int i = 0; i < n; i += 1) {
+                _buf.put(p + i, narrow(str.charAt(off + i)));
+            }
+            _buf.position(p + n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            _channel.close();
+        }
+    }
+
+    /** Returns C as an ASCII byte. */
+    private static byte narrow(char c) {
+        return c < 0x80 ? (byte) c : (byte) '?';
+    }
+
+    /** Write out everything in my buffer. */
+    private void drain() throws IOException {
+        _buf.flip();
+        while (_buf.hasRemaining()) {
+            _channel.write(_buf);
+        }
+        _buf.clear();
+    }
+
+    /** Size of my buffer, in bytes. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Destination of my output. */
+    private final WritableByteChannel _channel;
+
+    /** Output not yet written to _channel. */
+    private final ByteBuffer _buf;
+
+}
@@ -0,0 +1,239 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/** A compiled, binary form of a configuration file, kept next to it so
+ *  that later runs can skip parsing.  It holds the alphabet, the slot and
+ *  pawl counts, and every rotor's name, kind, permutation table and notch
+ *  mask, headed by the SHA-256 hash of the configuration file it was
+ *  compiled from; a cache whose hash does not match is ignored.  Failures
+ *  to read or write a cache are never errors: the configuration is just
+ *  parsed again.
+ *
+ *  All numbers are big-endian.  The layout is: MAGIC, VERSION, the
+ *  32-byte hash; the alphabet as a length and that many chars; the slot
+ *  count, the pawl count and the rotor count; then for each rotor, its
+ *  name as a length and chars, a byte of flags (REFLECTING, ROTATES,
+ *  NOTCHED), its permutation table as alphabet-size ints and, if NOTCHED,
+ *  a notch mask of one bit per setting, rounded up to whole bytes.
+ *  @author Mohak Buch
+ */
+class ConfigCache {
+
+    /** Returns the name of the cache for the configuration file
+     *  CONFIG. */
+    static Path cacheFor(Path config) {
+        return config.resolveSibling(config.getFileName() + ".cache");
+    }
+
+    /** Returns the SHA-256 hash of the contents of the file CONFIG, or
+     *  null if it cannot be read or is not a regular file (reading a pipe
+     *  here would leave nothing for the parser). */
+    static byte[] hash(Path config) {
+        if (!Files.isRegularFile(config)) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance("SHA-256")
+                .digest(Files.readAllBytes(config));
+        } catch (IOException | NoSuchAlgorithmException excp) {
+            return null;
+        }
+    }
+
+    /** Returns the spec stored in the cache file CACHE if it was compiled
+     *  from a configuration whose hash is HASH, or null if there is no
+     *  such valid cache. */
+    static MachineSpec load(Path cache, byte[] hash) {
+        try (FileChannel file = FileChannel.open(cache)) {
+            MappedByteBuffer buf =
+                file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            return read(buf, hash);
+        } catch (IOException | RuntimeException excp) {
+            return null;
+        }
+    }
+
+    /** Store SPEC, compiled from a configuration whose hash is HASH, in
+     *  the cache file CACHE, replacing it atomically where possible.
+     *  Returns true iff the cache was written. */
+    static boolean store(Path cache, byte[] hash, MachineSpec spec) {
+        Path temp = null;
+        try {
+            ByteBuffer buf = write(spec, hash);
+            temp = Files.createTempFile(cache.toAbsolutePath().getParent(),
+                                        ".enigma", ".tmp");
+            try (FileChannel file = FileChannel.open(
+                     temp, StandardOpenOption.WRITE)) {
+                while (buf.hasRemaining()) {
+                    file.write(buf);
+                }
+            }
+            try {
+                Files.move(temp, cache, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException excp) {
+                Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } catch (IOException | RuntimeException excp) {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ignored) {
+                    /* Ignore IOException */
+                }
+            }
+            return false;
+        }
+    }
+
+    /** Returns the contents of a cache file holding SPEC, compiled from a
+     *  configuration whose hash is HASH, ready to be written. */
+    private static ByteBuffer write(MachineSpec spec, byte[] hash) {
+        Alphabet alpha = spec.alphabet();
+        int n = alpha.size();
+        int size = 4 * 6 + hash.length + 2 * n;
+        for (int r = 0; r < spec.numAvailable(); r += 1) {
+            size += 4 + 2 * spec.name(r).length() + 1 + 4 * n
+                + (spec.notches(r) == null ? 0 : (n + 7) / 8);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(MAGIC).putInt(VERSION).put(hash);
+        buf.putInt(n);
+        for (int i = 0; i < n; i += 1) {
+            buf.putChar(alpha.toChar(i));
+        }
+        buf.putInt(spec.numRotors()).putInt(spec.numPawls())
+            .putInt(spec.numAvailable());
+        for (int r = 0; r < spec.numAvailable(); r += 1) {
+            String name = spec.name(r);
+            buf.putInt(name.length());
+            for (int i = 0; i < name.length(); i += 1) {
+                buf.putChar(name.charAt(i));
+            }
+            boolean[] notches = spec.notches(r);
+            buf.put((byte) ((spec.reflecting(r) ? REFLECTING : 0)
+                            | (spec.rotates(r) ? ROTATES : 0)
+                            | (notches != null ? NOTCHED : 0)));
+            buf.asIntBuffer().put(spec.forward(r));
+            buf.position(buf.position() + 4 * n);
+            if (notches != null) {
+                byte[] mask = new byte[(n + 7) / 8];
+                for (int x = 0; x < n; x += 1) {
+                    if (notches[x]) {
+                        mask[x / 8] |= 1 << (x % 8);
+                    }
+                }
+                buf.put(mask);
+            }
+        }
+        return buf.flip();
+    }
+
+    /** Returns the spec stored in BUF if it is a valid cache compiled from
+     *  a configuration whose hash is HASH, or null otherwise. */
+    private static MachineSpec read(ByteBuffer buf, byte[] hash) {
+        try {
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                return null;
+            }
+            byte[] stored = new byte[hash.length];
+            buf.get(stored);
+            if (!Arrays.equals(stored, hash)) {
+                return null;
+            }
+            Alphabet alpha = new Alphabet(readString(buf));
+            int n = alpha.size();
+            int numRotors = buf.getInt(), numPawls = buf.getInt();
+            int count = buf.getInt();
+            if (count < 0 || count > buf.remaining()) {
+                return null;
+            }
+            String[] names = new String[count];
+            boolean[] reflecting = new boolean[count];
+            boolean[] rotates = new boolean[count];
+            int[][] forward = new int[count][];
+            boolean[][] notches = new boolean[count][];
+            for (int r = 0; r < count; r += 1) {
+                names[r] = readString(buf);
+                byte flags = buf.get();
+                reflecting[r] = (flags & REFLECTING) != 0;
+                rotates[r] = (flags & ROTATES) != 0;
+                forward[r] = new int[n];
+                buf.asIntBuffer().get(forward[r]);
+                buf.position(buf.position() + 4 * n);
+                if (!isPermutation(forward[r])) {
+                    return null;
+                }
+                if ((flags & NOTCHED) != 0) {
+                    notches[r] = new boolean[n];
+                    byte[] mask = new byte[(n + 7) / 8];
+                    buf.get(mask);
+                    for (int x = 0; x < n; x += 1) {
+                        notches[r][x] = (mask[x / 8] & (1 << (x % 8))) != 0;
+                    }
+                }
+            }
+            if (buf.hasRemaining()) {
+                return null;
+            }
+            return new MachineSpec(alpha, numRotors, numPawls, names,
+                                   reflecting, rotates, forward, notches);
+        } catch (BufferUnderflowException | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Returns the string stored in BUF as a length and chars. */
+    private static String readString(ByteBuffer buf) {
+        int len = buf.getInt();
+        if (len < 0 || 2L * len > buf.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        char[] chars = new char[len];
+        buf.asCharBuffer().get(chars);
+        buf.position(buf.position() + 2 * len);
+        return new String(chars);
+    }
+
+    /** Returns true iff TABLE is a permutation of 0 .. TABLE.length-1. */
+    private static boolean isPermutation(int[] table) {
+        boolean[] seen = new boolean[table.length];
+        for (int x : table) {
+            if (x < 0 || x >= table.length || seen[x]) {
+                return false;
+            }
+            seen[x] = true;
+        }
+        return true;
+    }
+
+    /** First four bytes of a cache file: "ENIG". */
+    static final int MAGIC = 0x454E4947;
+
+    /** Version of the cache layout; caches of other versions are
+     *  ignored. */
+    static final int VERSION = 1;
+
+    /** Rotor flag: the rotor is a reflector. */
+    private static final int REFLECTING = 1;
+
+    /** Rotor flag: the rotor can move. */
+    private static final int ROTATES = 2;
+
+    /** Rotor flag: a notch mask follows the permutation table. */
+    private static final int NOTCHED = 4;
+
+}
@@ -0,0 +1,70 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigCache class.
+ *  @author Mohak Buch
+ */
+public class ConfigCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Directory for the cache files. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Returns a hash standing for a configuration whose contents are
+     *  TEXT. */
+    private byte[] hashOf(String text) throws IOException {
+        Path config = folder.newFile().toPath();
+        Files.write(config, text.getBytes());
+        return ConfigCache.hash(config);
+    }
+
+    @Test
+    public void checkRoundTrip() throws IOException {
+        MachineSpec spec = MachineTest.navalMachine().spec();
+        Path cache = folder.getRoot().toPath().resolve("naval.cache");
+        byte[] hash = hashOf("naval");
+        assertTrue(ConfigCache.store(cache, hash, spec));
+        MachineSpec loaded = ConfigCache.load(cache, hash);
+        assertNotNull(loaded);
+        assertEquals(spec.numAvailable(), loaded.numAvailable());
+        Machine mach = new Machine(loaded);
+        mach.insertRotors("B Beta III IV I".split(" "));
+        mach.setRotors("AXLE");
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     mach.convert("FROM HIS SHOULDER HIAWATHA"));
+    }
+
+    @Test
+    public void checkStaleOrDamaged() throws IOException {
+        MachineSpec spec = MachineTest.navalMachine().spec();
+        Path cache = folder.getRoot().toPath().resolve("naval.cache");
+        byte[] hash = hashOf("naval");
+        ConfigCache.store(cache, hash, spec);
+        assertNull(ConfigCache.load(cache, hashOf("changed")));
+        byte[] contents = Files.readAllBytes(cache);
+        Files.write(cache, java.util.Arrays.copyOf(contents,
+                                                   contents.length - 1));
+        assertNull(ConfigCache.load(cache, hash));
+        contents[contents.length - 200] ^= 0x7f;
+        Files.write(cache, contents);
+        assertNull(ConfigCache.load(cache, hash));
+        assertNull(ConfigCache.load(cache.resolveSibling("none"), hash));
+    }
+
+}
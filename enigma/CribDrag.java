@@ -0,0 +1,129 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Crib dragging: finding where in a ciphertext a crib (known plaintext)
+ *  can lie.  Since the reflector is a derangement, no character encrypts
+ *  to itself, so the crib cannot lie at any offset where one of its
+ *  characters equals the ciphertext character it would be under.  The
+ *  ciphertext is kept as one byte per character, so that all the offsets
+ *  are compared at once, a vector of them at a time, when the separately
+ *  compiled VectorCribDrag (in ../vector) and the jdk.incubator.vector
+ *  module are both present, and one at a time otherwise.
+ *  @author Mohak Buch
+ */
+class CribDrag {
+
+    /** A filter for cribs in CIPHERTEXT over ALPHABET, which must have at
+     *  most 256 characters.  Characters of CIPHERTEXT outside ALPHABET
+     *  are ignored, and do not count toward offsets. */
+    CribDrag(Alphabet alphabet, CharSequence ciphertext) {
+        if (alphabet.size() > MAX_ALPHABET_SIZE) {
+            throw error("crib dragging needs at most %d characters",
+                        MAX_ALPHABET_SIZE);
+        }
+        _alphabet = alphabet;
+        _cipher = bytes(ciphertext);
+    }
+
+    /** Returns the characters of TEXT in my alphabet, as indices. */
+    private byte[] bytes(CharSequence text) {
+        byte[] result = new byte[text.length()];
+        int len = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            int c = _alphabet.toInt(text.charAt(i));
+            if (c >= 0) {
+                result[len++] = (byte) c;
+            }
+        }
+        return Arrays.copyOf(result, len);
+    }
+
+    /** Returns the number of ciphertext characters. */
+    int length() {
+        return _cipher.length;
+    }
+
+    /** Returns, in increasing order, the offsets (numbers of ciphertext
+     *  characters before it) at which CRIB can lie in the ciphertext.
+     *  Characters of CRIB outside my alphabet are ignored. */
+    int[] offsets(CharSequence crib) {
+        byte[] text = bytes(crib);
+        if (text.length == 0) {
+            throw error("empty crib");
+        }
+        return offsets(_cipher, text);
+    }
+
+    /** Returns, in increasing order, the offsets at which no character of
+     *  CRIB equals the character of CIPHER under it, using my vector
+     *  filter if there is one. */
+    static int[] offsets(byte[] cipher, byte[] crib) {
+        return VECTOR != null ? VECTOR.offsets(cipher, crib)
+            : offsets(cipher, crib, 0);
+    }
+
+    /** Returns, in increasing order, the offsets of at least FROM at which
+     *  no character of CRIB equals the character of CIPHER under it. */
+    static int[] offsets(byte[] cipher, byte[] crib, int from) {
+        int count = cipher.length - crib.length + 1;
+        if (count <= from) {
+            return new int[0];
+        }
+        int[] result = new int[count - from];
+        int found = 0;
+        for (int offset = from; offset < count; offset += 1) {
+            int i;
+            for (i = 0; i < crib.length && cipher[offset + i] != crib[i];
+                 i += 1) {
+                continue;
+            }
+            if (i == crib.length) {
+                result[found++] = offset;
+            }
+        }
+        return Arrays.copyOf(result, found);
+    }
+
+    /** Returns true iff the offsets are compared in vectors. */
+    static boolean vectorized() {
+        return VECTOR != null;
+    }
+
+    /** Returns the vector filter, or null if either it was not compiled
+     *  or the jdk.incubator.vector module was not added to the JVM (as by
+     *  "--add-modules jdk.incubator.vector"). */
+    private static Filter vectorFilter() {
+        try {
+            return (Filter) Class.forName("enigma.VectorCribDrag")
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return null;
+        }
+    }
+
+    /** A bulk implementation of offsets(byte[], byte[]). */
+    interface Filter {
+
+        /** Returns, in increasing order, the offsets at which no
+         *  character of CRIB equals the character of CIPHER under it. */
+        int[] offsets(byte[] cipher, byte[] crib);
+
+    }
+
+    /** Largest alphabet whose indices fit in a byte. */
+    static final int MAX_ALPHABET_SIZE = 256;
+
+    /** The vector filter, or null if offsets are compared one at a
+     *  time. */
+    private static final Filter VECTOR = vectorFilter();
+
+    /** Alphabet of the ciphertext. */
+    private final Alphabet _alphabet;
+
+    /** The ciphertext, as alphabet indices. */
+    private final byte[] _cipher;
+
+}
@@ -0,0 +1,64 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribDrag class.
+ *  @author Mohak Buch
+ */
+public class CribDragTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    @Test
+    public void checkOffsets() {
+        CribDrag drag = new CribDrag(UPPER, "AB-CAB CA");
+        assertEquals(7, drag.length());
+        assertArrayEquals(new int[] { 1, 2, 4, 5 }, drag.offsets("AB"));
+        assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5, 6 },
+                          drag.offsets("Z"));
+        assertArrayEquals(new int[0], drag.offsets("ZZZZZZZZ"));
+    }
+
+    @Test
+    public void checkFindsCrib() {
+        Machine mach = MachineTest.navalMachine("B Beta III IV I", "AXLE",
+                                                "(HQ) (EX) (IP) (TR) (BY)");
+        String crib = "WHENCETHESELEGENDS";
+        String cipher = mach.convert(KeySearchTest.PLAIN);
+        int offset = KeySearchTest.PLAIN.replace(" ", "").indexOf(crib);
+        int[] offsets = new CribDrag(UPPER, cipher).offsets(crib);
+        assertTrue(offsets.length < cipher.length() - crib.length());
+        assertTrue(Arrays.binarySearch(offsets, offset) >= 0);
+    }
+
+    @Test
+    public void checkLongCiphertext() {
+        Random random = new Random(0x5EED);
+        byte[] cipher = new byte[10007];
+        for (int i = 0; i < cipher.length; i += 1) {
+            cipher[i] = (byte) random.nextInt(4);
+        }
+        byte[] crib = { 0, 1, 2 };
+        int[] offsets = CribDrag.offsets(cipher, crib, 0);
+        int expected = 0;
+        for (int k = 0; k + crib.length <= cipher.length; k += 1) {
+            if (cipher[k] != 0 && cipher[k + 1] != 1 && cipher[k + 2] != 2) {
+                assertEquals(k, offsets[expected]);
+                expected += 1;
+            }
+        }
+        assertEquals(expected, offsets.length);
+        assertArrayEquals(offsets, CribDrag.offsets(cipher, crib));
+    }
+
+}
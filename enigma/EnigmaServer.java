@@ -0,0 +1,189 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static enigma.EnigmaException.*;
+
+/** A server that converts messages for any number of concurrent clients
+ *  over TCP on the loopback interface.  Each connection is a session with
+ *  its own Machine over one shared MachineSpec, served on its own thread:
+ *  a virtual thread where the Java runtime has them, otherwise a platform
+ *  thread.
+ *
+ *  A client sends requests of two lines each: a settings line, as for
+ *  Main.setUp, followed by a message line.  For each request the server
+ *  answers with one line: the converted message in groups of five, or
+ *  "Error: " and a description of what was wrong.  Requests may be
+ *  pipelined; responses come back in order.
+ *  @author Mohak Buch
+ */
+class EnigmaServer implements AutoCloseable {
+
+    /** Serve the machines described by the configuration file ARGS[0] on
+     *  the loopback port ARGS[1] (default DEFAULT_PORT) until killed. */
+    public static void main(String... args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: java enigma.EnigmaServer CONFIG "
+                               + "[PORT]");
+            System.exit(1);
+        }
+        try (EnigmaServer server = new EnigmaServer(
+                 new Main(new String[] { args[0] }).readConfig().spec(),
+                 args.length > 1 ? Integer.parseInt(args[1])
+                 : DEFAULT_PORT)) {
+            System.err.printf("Serving on port %d%n", server.port());
+            server.serve();
+        } catch (EnigmaException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A server of machines described by SPEC, listening on the loopback
+     *  port PORT, or on any free port if PORT is 0. */
+    EnigmaServer(MachineSpec spec, int port) {
+        _spec = spec;
+        try {
+            _socket = new ServerSocket(port, BACKLOG,
+                                       InetAddress.getLoopbackAddress());
+        } catch (IOException excp) {
+            throw error("could not listen on port %d: %s", port,
+                        excp.getMessage());
+        }
+        _sessions = newThreadPerTaskExecutor();
+    }
+
+    /** Returns the port I am listening on. */
+    int port() {
+        return _socket.getLocalPort();
+    }
+
+    /** Accept connections and start a session for each until I am
+     *  closed. */
+    void serve() {
+        while (!_socket.isClosed()) {
+            Socket client;
+            try {
+                client = _socket.accept();
+            } catch (IOException excp) {
+                if (_socket.isClosed()) {
+                    break;
+                }
+                continue;
+            }
+            _sessions.execute(() -> session(client));
+        }
+    }
+
+    /** Stop accepting connections.  Sessions already started run until
+     *  their clients disconnect. */
+    @Override
+    public void close() {
+        try {
+            _socket.close();
+        } catch (IOException excp) {
+            /* Ignore IOException */
+        }
+        _sessions.shutdown();
+    }
+
+    /** Serve requests from CLIENT until it disconnects. */
+    private void session(Socket client) {
+        Machine mach = new Machine(_spec);
+        try (client) {
+            client.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                client.getInputStream(), StandardCharsets.UTF_8));
+            GroupedWriter out = new GroupedWriter(new OutputStreamWriter(
+                client.getOutputStream(), StandardCharsets.UTF_8),
+                5, " ", SESSION_BUFFER_SIZE);
+            for (String settings = in.readLine(); settings != null;
+                 settings = in.readLine()) {
+                String msg = in.readLine();
+                if (msg == null) {
+                    break;
+                }
+                respond(mach, settings, msg, out);
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException | EnigmaException excp) {
+            /* The client has gone; nothing more to do. */
+        }
+    }
+
+    /** Set MACH up according to SETTINGS, and write the conversion of MSG
+     *  to OUT as one line, or an error line if either is invalid. */
+    private static void respond(Machine mach, String settings, String msg,
+                                GroupedWriter out) {
+        char[] chars = msg.toCharArray();
+        int len;
+        try {
+            if (settings.isEmpty()) {
+                throw error("No setting found");
+            }
+            mach.fixRotors();
+            Main.setUp(mach, settings);
+            len = mach.convert(chars, 0, chars.length, chars, 0);
+        } catch (EnigmaException excp) {
+            out.writeVerbatim("Error: " + excp.getMessage());
+            out.endLine();
+            return;
+        }
+        out.write(chars, 0, len);
+        out.endLine();
+    }
+
+    /** Returns an executor that runs each task on a new virtual thread,
+     *  if this Java runtime supports them, or otherwise on a pooled
+     *  platform thread. */
+    static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            Method factory =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException
+                 excp) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(null, task, "enigma-session",
+                                           PLATFORM_STACK_SIZE);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Default port to listen on. */
+    static final int DEFAULT_PORT = 6161;
+
+    /** Maximum number of connections waiting to be accepted. */
+    private static final int BACKLOG = 4096;
+
+    /** Size in characters of each session's output buffer. */
+    private static final int SESSION_BUFFER_SIZE = 1 << 12;
+
+    /** Stack size in bytes requested for platform session threads. */
+    private static final long PLATFORM_STACK_SIZE = 1 << 18;
+
+    /** Description of the machines I serve, shared by all sessions. */
+    private final MachineSpec _spec;
+
+    /** Socket on which I accept connections. */
+    private final ServerSocket _socket;
+
+    /** Runs sessions, one thread each. */
+    private final ExecutorService _sessions;
+
+}
@@ -0,0 +1,99 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/** The suite of all JUnit tests for the EnigmaServer class.
+ *  @author Mohak Buch
+ */
+public class EnigmaServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Settings of the standard test message. */
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Returns a client connection to the server on PORT. */
+    private static Socket connect(int port) throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), port);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkPipelinedSessions() throws Exception {
+        try (EnigmaServer server =
+                 new EnigmaServer(MachineTest.navalMachine().spec(), 0)) {
+            Thread serving = new Thread(server::serve);
+            serving.setDaemon(true);
+            serving.start();
+            try (Socket first = connect(server.port());
+                 Socket second = connect(server.port())) {
+                Writer out1 = new OutputStreamWriter(
+                    first.getOutputStream(), StandardCharsets.UTF_8);
+                Writer out2 = new OutputStreamWriter(
+                    second.getOutputStream(), StandardCharsets.UTF_8);
+                out1.write(SETTINGS + "\nFROM HIS SHOULDER\n"
+                           + SETTINGS + "\nFROM HIS SHOULDER HIAWATHA\n"
+                           + "* B Beta III IV I AX\nHELLO\n");
+                out1.flush();
+                out2.write(SETTINGS + "\nFROM HIS SHOULDER HIAWATHA\n");
+                out2.flush();
+                BufferedReader in1 = new BufferedReader(new InputStreamReader(
+                    first.getInputStream(), StandardCharsets.UTF_8));
+                BufferedReader in2 = new BufferedReader(new InputStreamReader(
+                    second.getInputStream(), StandardCharsets.UTF_8));
+                assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW", in2.readLine());
+                assertEquals("QVPQS OKOIL PUBKJ", in1.readLine());
+                assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW", in1.readLine());
+                String err = in1.readLine();
+                assertTrue(err, err.startsWith("Error: "));
+            }
+        }
+    }
+
+    @Test
+    public void checkMalformedSettings() throws Exception {
+        try (EnigmaServer server =
+                 new EnigmaServer(MachineTest.navalMachine().spec(), 0)) {
+            Thread serving = new Thread(server::serve);
+            serving.setDaemon(true);
+            serving.start();
+            try (Socket client = connect(server.port())) {
+                Writer out = new OutputStreamWriter(
+                    client.getOutputStream(), StandardCharsets.UTF_8);
+                out.write("*B Beta III IV I AXLE\nHELLO\n"
+                          + SETTINGS + "\nFROM HIS SHOULDER\n"
+                          + "*B Beta III IV I AXLE\nHELLO\n"
+                          + "B Beta III IV I AXLE\nHELLO\n"
+                          + SETTINGS + "\nFROM HIS SHOULDER\n");
+                out.flush();
+                BufferedReader in = new BufferedReader(new InputStreamReader(
+                    client.getInputStream(), StandardCharsets.UTF_8));
+                assertEquals("Error: Settings improperly formatted",
+                             in.readLine());
+                assertEquals("QVPQS OKOIL PUBKJ", in.readLine());
+                assertEquals("Error: Settings improperly formatted",
+                             in.readLine());
+                String err = in.readLine();
+                assertTrue(err, err.startsWith("Error: "));
+                assertEquals("QVPQS OKOIL PUBKJ", in.readLine());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** A destination for message lines that breaks each line into groups of
+ *  a fixed width, separated by a fixed string, formatting them into a
+ *  reusable buffer that is passed on to the underlying Writer only when
+ *  it fills or is flushed.  A line may be written in any number of
+ *  pieces; grouping continues across them until the line is ended.
+ *  @author Mohak Buch
+ */
+class GroupedWriter {
+
+    /** A writer to OUT of lines in groups of WIDTH characters, separated
+     *  by SEPARATOR, where WIDTH > 0. */
+    GroupedWriter(Writer out, int width, String separator) {
+        this(out, width, separator, BUFFER_SIZE);
+    }
+
+    /** A writer to OUT of lines in groups of WIDTH characters, separated
+     *  by SEPARATOR, where WIDTH > 0, buffering up to SIZE characters
+     *  (SIZE > 0) before passing them on. */
+    GroupedWriter(Writer out, int width, String separator, int size) {
+        if (width <= 0 || size <= 0) {
+            throw error("group width and buffer size must be positive");
+        }
+        _out = out;
+        _width = width;
+        _separator = separator.toCharArray();
+        _buf = new char[size];
+    }
+
+    /** A writer to OUT of lines in groups of five, separated by blanks. */
+    GroupedWriter(Writer out) {
+        this(out, 5, " ");
+    }
+
+    /** Write the LEN characters of MSG starting at OFF as the continuation
+     *  of the current line. */
+    void write(char[] msg, int off, int len) {
+        while (len > 0) {
+            if (_column == _width) {
+                put(_separator, 0, _separator.length);
+                _column = 0;
+            }
+            int group = Math.min(len, _width - _column);
+            put(msg, off, group);
+            off += group;
+            len -= group;
+            _column += group;
+        }
+    }
+
+    /** Write MSG as the continuation of the current line. */
+    void write(String msg) {
+        write(msg.toCharArray(), 0, msg.length());
+    }
+
+    /** Write TEXT as it is, without breaking it into groups.  Grouping of
+     *  anything written after it on the same line is unaffected. */
+    void writeVerbatim(String text) {
+        put(text.toCharArray(), 0, text.length());
+    }
+
+    /** Write the LEN characters of TEXT starting at OFF as they are, as
+     *  for writeVerbatim(String). */
+    void writeVerbatim(char[] text, int off, int len) {
+        put(text, off, len);
+    }
+
+    /** Continue a line of which COUNT characters have already been
+     *  written elsewhere (say, verbatim from another GroupedWriter), so
+     *  that what I write next is grouped as their continuation. */
+    void continueLine(long count) {
+        _column = count == 0 ? 0 : (int) ((count - 1) % _width) + 1;
+    }
+
+    /** End the current line. */
+    void endLine() {
+        put(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
+        _column = 0;
+    }
+
+    /** Pass everything written so far on to the underlying Writer and
+     *  flush it. */
+    void flush() {
+        try {
+            drain();
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Flush and close the underlying Writer. */
+    void close() {
+        try {
+            drain();
+            _out.close();
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Append the LEN characters of CHARS starting at OFF to my buffer,
+     *  draining it as it fills. */
+    private void put(char[] chars, int off, int len) {
+        while (len > 0) {
+            if (_limit == _buf.length) {
+                try {
+                    drain();
+                } catch (IOException excp) {
+                    throw error("could not write output: %s",
+                                excp.getMessage());
+                }
+            }
+            int n = Math.min(len, _buf.length - _limit);
+            System.arraycopy(chars, off, _buf, _limit, n);
+            _limit += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Pass the contents of my buffer on to the underlying Writer. */
+    private void drain() throws IOException {
+        _out.write(_buf, 0, _limit);
+        _limit = 0;
+    }
+
+    /** Default size of my buffer, in characters. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Line separator written at the end of each line. */
+    private static final char[] LINE_SEPARATOR =
+        System.lineSeparator().toCharArray();
+
+    /** Destination of my output. */
+    private final Writer _out;
+
+    /** Number of characters in a full group. */
+    private final int _width;
+
+    /** Characters written between groups. */
+    private final char[] _separator;
+
+    /** Formatted output not yet passed on to _out. */
+    private final char[] _buf;
+
+    /** End of the valid characters in _buf. */
+    private int _limit;
+
+    /** Number of characters in the current group. */
+    private int _column;
+
+}
@@ -0,0 +1,71 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+
+/** The suite of all JUnit tests for the GroupedWriter class.
+ *  @author Mohak Buch
+ */
+public class GroupedWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Line separator expected at the end of each line. */
+    private static final String NL = System.lineSeparator();
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkGroupsOfFive() {
+        StringWriter dest = new StringWriter();
+        GroupedWriter out = new GroupedWriter(dest);
+        out.write("QVPQSOKOILPUBKJZPISFXDW");
+        out.endLine();
+        out.endLine();
+        out.write("ABCDE");
+        out.endLine();
+        out.flush();
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW" + NL + NL + "ABCDE" + NL,
+                     dest.toString());
+    }
+
+    @Test
+    public void checkPiecesAndSeparator() {
+        StringWriter dest = new StringWriter();
+        GroupedWriter out = new GroupedWriter(dest, 3, "--");
+        char[] msg = "ABCDEFGHIJ".toCharArray();
+        out.write(msg, 0, 2);
+        out.write(msg, 2, 1);
+        out.write(msg, 3, 7);
+        out.endLine();
+        out.flush();
+        assertEquals("ABC--DEF--GHI--J" + NL, dest.toString());
+    }
+
+    @Test
+    public void checkLongLine() {
+        StringBuilder msg = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100000; i += 1) {
+            char c = (char) ('A' + i % 26);
+            msg.append(c);
+            if (i > 0 && i % 5 == 0) {
+                expected.append(' ');
+            }
+            expected.append(c);
+        }
+        StringWriter dest = new StringWriter();
+        GroupedWriter out = new GroupedWriter(dest);
+        out.write(msg.toString());
+        out.endLine();
+        out.close();
+        assertEquals(expected + NL, dest.toString());
+    }
+
+}
@@ -0,0 +1,424 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only search for the rotors and settings of a message.
+ *  Every rotor order allowed by a MachineSpec (a reflector in slot 0,
+ *  non-moving rotors in the slots without pawls, and moving rotors in the
+ *  rest), optionally with its leftmost rotors fixed, is tried at every
+ *  setting, with no plugboard and all rings at 0.  Each candidate
+ *  decryption is scored by its index of coincidence, which is highest for
+ *  text in a natural language, and the best few candidates are kept.
+ *
+ *  The candidates are numbered in order of rotor order and then setting,
+ *  and ranges of that numbering are split among the threads of a
+ *  ForkJoinPool, so idle threads steal work from busy ones.  Each thread
+ *  keeps its own Machine and decryption buffer for the whole search.
+ *  @author Mohak Buch
+ */
+class KeySearch {
+
+    /** Search for the key of a ciphertext as described by ARGS: CONFIG
+     *  CIPHERTEXT [TOP [ROTORS]], where CONFIG is a configuration file,
+     *  CIPHERTEXT a file holding the message (characters outside the
+     *  alphabet are ignored), TOP the number of candidates to report
+     *  (default 10) and ROTORS the names of the leftmost rotors to fix,
+     *  separated by blanks.  Prints the best candidates, as settings lines
+     *  preceded by their scores, and then the search rate. */
+    public static void main(String... args) {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("Usage: java enigma.KeySearch CONFIG "
+                               + "CIPHERTEXT [TOP [ROTORS]]");
+            System.exit(1);
+        }
+        try {
+            MachineSpec spec =
+                new Main(new String[] { args[0] }).readConfig().spec();
+            String text = new String(Files.readAllBytes(Paths.get(args[1])));
+            KeySearch search = new KeySearch(
+                spec, text,
+                args.length > 3 ? args[3].trim().split("\\s+") : NO_ROTORS);
+            for (Candidate best : search.search(
+                     args.length > 2 ? Integer.parseInt(args[2]) : 10,
+                     Runtime.getRuntime().availableProcessors())) {
+                System.out.println(best);
+            }
+            System.err.println(search.report());
+        } catch (EnigmaException | IOException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** A search for the key of CIPHERTEXT among the machines described by
+     *  SPEC whose leftmost rotors are named ROTORS.  Characters of
+     *  CIPHERTEXT outside the alphabet are ignored. */
+    KeySearch(MachineSpec spec, String ciphertext, String[] rotors) {
+        _spec = spec;
+        Alphabet alphabet = spec.alphabet();
+        int[] cipher = new int[ciphertext.length()];
+        int len = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            int c = alphabet.toInt(ciphertext.charAt(i));
+            if (c >= 0) {
+                cipher[len++] = c;
+            }
+        }
+        if (len < 2) {
+            throw error("ciphertext too short to score");
+        }
+        _cipher = Arrays.copyOf(cipher, len);
+        _orders = rotorOrders(spec, rotors);
+        long settings = 1;
+        for (int i = 1; i < spec.numRotors(); i += 1) {
+            if (settings > Long.MAX_VALUE / alphabet.size()) {
+                throw error("too many settings to search");
+            }
+            settings *= alphabet.size();
+        }
+        if (_orders.isEmpty()) {
+            throw error("no rotor orders to search");
+        } else if (settings > Long.MAX_VALUE / _orders.size()) {
+            throw error("too many candidates to search");
+        }
+        _settings = settings;
+    }
+
+    /** Returns every rotor order, as rotor numbers in SPEC from slot 0
+     *  rightward, that has a reflector in slot 0, non-moving rotors in
+     *  the other slots without pawls, moving rotors in the slots with
+     *  pawls, and the rotors named PREFIX in its leftmost slots.  Of
+     *  several rotors with the same name, only the one that SPEC finds by
+     *  that name is used. */
+    static List<int[]> rotorOrders(MachineSpec spec, String[] prefix) {
+        int[] order = new int[spec.numRotors()];
+        boolean[] used = new boolean[spec.numAvailable()];
+        if (prefix.length > order.length) {
+            throw error("too many rotors given");
+        }
+        for (int i = 0; i < prefix.length; i += 1) {
+            int r = spec.rotorIndex(prefix[i]);
+            if (r < 0) {
+                throw error("unknown rotor %s", prefix[i]);
+            } else if (used[r]) {
+                throw new EnigmaException("Duplicate rotor name");
+            }
+            order[i] = r;
+            used[r] = true;
+        }
+        List<int[]> orders = new ArrayList<>();
+        addOrders(spec, order, prefix.length, used, orders);
+        return orders;
+    }
+
+    /** Add to ORDERS every completion of ORDER, whose first SLOT
+     *  elements are chosen, with rotors not marked in USED, as for
+     *  rotorOrders. */
+    private static void addOrders(MachineSpec spec, int[] order, int slot,
+                                  boolean[] used, List<int[]> orders) {
+        if (slot == order.length) {
+            orders.add(order.clone());
+            return;
+        }
+        boolean moving = slot >= spec.numRotors() - spec.numPawls();
+        for (int r = 0; r < spec.numAvailable(); r += 1) {
+            boolean fits = slot == 0
+                ? spec.reflecting(r) && !spec.rotates(r)
+                : spec.rotates(r) == moving && !spec.reflecting(r);
+            if (fits && !used[r]
+                && spec.rotorIndex(spec.name(r)) == r) {
+                used[r] = true;
+                order[slot] = r;
+                addOrders(spec, order, slot + 1, used, orders);
+                used[r] = false;
+            }
+        }
+    }
+
+    /** Returns the number of candidates a search tries. */
+    long candidates() {
+        return _orders.size() * _settings;
+    }
+
+    /** Try every candidate on THREADS threads and return the TOP with the
+     *  highest scores, best first.  Candidates with equal scores are
+     *  ranked in the order they are numbered, so the result does not
+     *  depend on THREADS. */
+    List<Candidate> search(int top, int threads) {
+        if (top <= 0 || threads <= 0) {
+            throw error("result count and thread count must be positive");
+        }
+        _top = top;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        PriorityQueue<Candidate> best;
+        try {
+            best = pool.invoke(new Range(this, 0, candidates()));
+        } finally {
+            pool.shutdown();
+        }
+        _elapsed = System.nanoTime() - start;
+        _threads = threads;
+        Candidate[] result = best.toArray(new Candidate[0]);
+        Arrays.sort(result);
+        return Arrays.asList(result);
+    }
+
+    /** Returns a summary of the speed of the last search. */
+    String report() {
+        double seconds = _elapsed / 1e9;
+        return String.format(
+            "%d candidates of %d characters in %.3f s on %d threads: "
+            + "%.0f candidates/s",
+            candidates(), _cipher.length, seconds, _threads,
+            candidates() / seconds);
+    }
+
+    /** Returns the index of coincidence of the LEN character indices in
+     *  TEXT, as the number of pairs of equal characters, using COUNTS
+     *  (as large as the alphabet) as scratch. */
+    private static long coincidences(int[] text, int len, int[] counts) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < len; i += 1) {
+            counts[text[i]] += 1;
+        }
+        long pairs = 0;
+        for (int count : counts) {
+            pairs += (long) count * (count - 1);
+        }
+        return pairs;
+    }
+
+    /** The search of a range of candidate numbers. */
+    private static final class Range
+        extends RecursiveTask<PriorityQueue<Candidate>> {
+
+        /** The search of candidates LO .. HI-1 of SEARCH. */
+        Range(KeySearch search, long lo, long hi) {
+            _search = search;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected PriorityQueue<Candidate> compute() {
+            KeySearch search = _search;
+            if (_hi - _lo > GRAIN) {
+                long mid = (_lo + _hi) >>> 1;
+                Range left = new Range(search, _lo, mid);
+                left.fork();
+                PriorityQueue<Candidate> best =
+                    new Range(search, mid, _hi).compute();
+                for (Candidate cand : left.join()) {
+                    keep(best, cand);
+                }
+                return best;
+            }
+            Worker work = search._workers.get();
+            PriorityQueue<Candidate> best = new PriorityQueue<>(
+                search._top + 1, (a, b) -> b.compareTo(a));
+            int n = search._spec.alphabet().size();
+            int[] cipher = search._cipher;
+            long settings = search._settings;
+            for (long id = _lo; id < _hi; id += 1) {
+                int order = (int) (id / settings);
+                if (order != work._order) {
+                    work._machine.insertRotors(
+                        search.names(search._orders.get(order)));
+                    work._order = order;
+                }
+                long p = id % settings;
+                for (int i = work._setting.length - 1; i >= 0; i -= 1) {
+                    work._setting[i] = (int) (p % n);
+                    p /= n;
+                }
+                work._machine.setRotors(work._setting);
+                work._machine.convert(cipher, 0, cipher.length,
+                                      work._plain, 0);
+                long score = coincidences(work._plain, cipher.length,
+                                          work._counts);
+                if (best.size() < search._top
+                    || score > best.peek()._pairs) {
+                    keep(best, search.candidate(id, score));
+                }
+            }
+            return best;
+        }
+
+        /** Add CAND to BEST, dropping the worst if there are more than
+         *  _top. */
+        private void keep(PriorityQueue<Candidate> best, Candidate cand) {
+            best.add(cand);
+            if (best.size() > _search._top) {
+                best.poll();
+            }
+        }
+
+        /** The search I am part of. */
+        private final KeySearch _search;
+
+        /** First candidate number in my range. */
+        private final long _lo;
+
+        /** Candidate number just past my range. */
+        private final long _hi;
+
+        /** Version of my serialized form, which ForkJoinTask requires. */
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    /** Returns the names of the rotors numbered ORDER. */
+    private String[] names(int[] order) {
+        String[] names = new String[order.length];
+        for (int i = 0; i < order.length; i += 1) {
+            names[i] = _spec.name(order[i]);
+        }
+        return names;
+    }
+
+    /** Returns candidate number ID, whose decryption has PAIRS pairs of
+     *  equal characters. */
+    private Candidate candidate(long id, long pairs) {
+        Alphabet alphabet = _spec.alphabet();
+        int n = alphabet.size();
+        char[] setting = new char[_spec.numRotors() - 1];
+        long p = id % _settings;
+        for (int i = setting.length - 1; i >= 0; i -= 1) {
+            setting[i] = alphabet.toChar((int) (p % n));
+            p /= n;
+        }
+        double len = _cipher.length;
+        return new Candidate(id, names(_orders.get((int) (id / _settings))),
+                             new String(setting), pairs,
+                             pairs / (len * (len - 1)));
+    }
+
+    /** A rotor order and setting with the score of its decryption. */
+    static final class Candidate implements Comparable<Candidate> {
+
+        /** Candidate number ID, with rotors ROTORS at SETTING, whose
+         *  decryption has PAIRS pairs of equal characters and so an index
+         *  of coincidence of SCORE. */
+        Candidate(long id, String[] rotors, String setting, long pairs,
+                  double score) {
+            _id = id;
+            _rotors = rotors;
+            _setting = setting;
+            _pairs = pairs;
+            _score = score;
+        }
+
+        /** Returns the names of my rotors, from slot 0 rightward. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Returns my rotor settings, as for Machine.setRotors. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Returns the index of coincidence of my decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Returns the settings line that selects me. */
+        String settingsLine() {
+            return "* " + String.join(" ", _rotors) + " " + _setting;
+        }
+
+        /** Orders candidates from best to worst. */
+        @Override
+        public int compareTo(Candidate other) {
+            if (_pairs != other._pairs) {
+                return _pairs > other._pairs ? -1 : 1;
+            }
+            return Long.compare(_id, other._id);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.5f %s", _score, settingsLine());
+        }
+
+        /** My number in the order of the search. */
+        private final long _id;
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+
+        /** My rotor settings. */
+        private final String _setting;
+
+        /** Number of pairs of equal characters in my decryption. */
+        private final long _pairs;
+
+        /** Index of coincidence of my decryption. */
+        private final double _score;
+
+    }
+
+    /** A thread's machine and scratch space, kept for a whole search. */
+    private final class Worker {
+
+        /** Number of the rotor order inserted in _machine, or -1. */
+        private int _order = -1;
+
+        /** This thread's machine. */
+        private final Machine _machine = new Machine(_spec);
+
+        /** Setting being tried, as alphabet indices. */
+        private final int[] _setting = new int[_spec.numRotors() - 1];
+
+        /** Decryption of the ciphertext at the current candidate. */
+        private final int[] _plain = new int[_cipher.length];
+
+        /** Character counts of _plain. */
+        private final int[] _counts = new int[_spec.alphabet().size()];
+
+    }
+
+    /** Number of candidates below which a range is not split. */
+    private static final long GRAIN = 1 << 10;
+
+    /** Empty list of rotor names. */
+    private static final String[] NO_ROTORS = new String[0];
+
+    /** The machines searched. */
+    private final MachineSpec _spec;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** Rotor orders searched, as rotor numbers in _spec. */
+    private final List<int[]> _orders;
+
+    /** Number of settings of each rotor order. */
+    private final long _settings;
+
+    /** Each thread's Worker. */
+    private final ThreadLocal<Worker> _workers =
+        ThreadLocal.withInitial(Worker::new);
+
+    /** Number of candidates kept by the current search. */
+    private int _top;
+
+    /** Number of threads used by the last search. */
+    private int _threads;
+
+    /** Duration of the last search, in nanoseconds. */
+    private long _elapsed;
+
+}
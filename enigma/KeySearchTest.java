@@ -0,0 +1,80 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySearch class.
+ *  @author Mohak Buch
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Plaintext long enough for its index of coincidence to stand out. */
+    static final String PLAIN =
+        "SHOULD YOU ASK ME WHENCE THESE STORIES WHENCE THESE LEGENDS AND "
+        + "TRADITIONS WITH THE ODORS OF THE FOREST WITH THE DEW AND DAMP OF "
+        + "MEADOWS WITH THE CURLING SMOKE OF WIGWAMS WITH THE RUSHING OF "
+        + "GREAT RIVERS WITH THEIR FREQUENT REPETITIONS AND THEIR WILD "
+        + "REVERBERATIONS AS OF THUNDER IN THE MOUNTAINS I SHOULD ANSWER "
+        + "I SHOULD TELL YOU FROM THE FORESTS AND THE PRAIRIES";
+
+    /** Returns a spec for three-slot machines (a reflector and two moving
+     *  rotors) built from the naval rotors. */
+    static MachineSpec smallSpec() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : new String[] { "B", "C" }) {
+            rotors.add(new Reflector(name,
+                                     new Permutation(NAVALA.get(name), UPPER)));
+        }
+        for (String name : new String[] { "I", "II", "III", "IV", "V" }) {
+            rotors.add(new MovingRotor(name,
+                                       new Permutation(NAVALA.get(name), UPPER),
+                                       "Q"));
+        }
+        rotors.add(new FixedRotor("Beta",
+                                  new Permutation(NAVALA.get("Beta"), UPPER)));
+        return new MachineSpec(UPPER, 3, 2, rotors);
+    }
+
+    @Test
+    public void checkRotorOrders() {
+        MachineSpec spec = smallSpec();
+        assertEquals(2 * 5 * 4,
+                     KeySearch.rotorOrders(spec, new String[0]).size());
+        assertEquals(4, KeySearch.rotorOrders(spec, new String[] { "C", "II" })
+                     .size());
+        for (int[] order : KeySearch.rotorOrders(spec, new String[] { "C" })) {
+            assertEquals("C", spec.name(order[0]));
+            assertTrue(spec.rotates(order[1]) && spec.rotates(order[2]));
+        }
+    }
+
+    @Test
+    public void checkFindsKey() {
+        MachineSpec spec = smallSpec();
+        Machine mach = new Machine(spec);
+        mach.insertRotors("C IV II".split(" "));
+        mach.setRotors("QF");
+        String cipher = mach.convert(PLAIN);
+        KeySearch search = new KeySearch(spec, cipher, new String[0]);
+        assertEquals(40 * 26 * 26, search.candidates());
+        List<KeySearch.Candidate> best = search.search(3, 2);
+        assertEquals(3, best.size());
+        assertEquals("* C IV II QF", best.get(0).settingsLine());
+        assertTrue(best.get(0).score() > best.get(1).score());
+        KeySearch narrow = new KeySearch(spec, cipher, new String[] { "C" });
+        assertEquals(best.get(0).settingsLine(),
+                     narrow.search(1, 1).get(0).settingsLine());
+    }
+
+}
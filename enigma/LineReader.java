@@ -0,0 +1,170 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A source of lines of text that hands out each line in pieces of
+ *  bounded size, so that no line need ever be held in memory whole.
+ *  Lines end at "\n", "\r\n", "\r", U+2028, U+2029 or U+0085,
+ *  as for java.util.Scanner.nextLine.
+ *  @author Mohak Buch
+ */
+class LineReader {
+
+    /** A LineReader taking its text from SOURCE. */
+    LineReader(Reader source) {
+        _source = source;
+        _buf = new char[BUFFER_SIZE];
+    }
+
+    /** Skip the rest of the current line, if any, and start the next one.
+     *  Returns false if there are no more lines. */
+    boolean nextLine() {
+        while (_inLine) {
+            if (_pos == _limit && !fill()) {
+                _inLine = false;
+            } else if (isLineEnd(_buf[_pos])) {
+                endLine();
+            } else {
+                _pos += 1;
+            }
+        }
+        if (_pos == _limit && !fill()) {
+            return false;
+        }
+        _inLine = true;
+        return true;
+    }
+
+    /** Skip any whitespace, including line ends, and start a line at the
+     *  first character that is not whitespace.  Returns false if there is
+     *  no such character. */
+    boolean skipWhitespace() {
+        while (_pos < _limit || fill()) {
+            if (!Character.isWhitespace(_buf[_pos])) {
+                _inLine = true;
+                return true;
+            }
+            _pos += 1;
+        }
+        _inLine = false;
+        return false;
+    }
+
+    /** Read up to LEN characters of the current line into BUF, starting
+     *  at OFF.  Returns the number of characters read, which is less than
+     *  LEN only if the line has ended, or -1 if there are no characters
+     *  left in the current line. */
+    int read(char[] buf, int off, int len) {
+        if (!_inLine) {
+            return -1;
+        }
+        int k = 0;
+        while (k < len) {
+            if (_pos == _limit && !fill()) {
+                _inLine = false;
+                break;
+            }
+            char c = _buf[_pos];
+            if (isLineEnd(c)) {
+                endLine();
+                break;
+            }
+            buf[off + k] = c;
+            k += 1;
+            _pos += 1;
+        }
+        return k == 0 && !_inLine ? -1 : k;
+    }
+
+    /** Returns true iff some character that is not whitespace follows the
+     *  current position, as for java.util.Scanner.hasNext.  Nothing is
+     *  consumed. */
+    boolean hasToken() {
+        int p = _pos;
+        while (true) {
+            for (; p < _limit; p += 1) {
+                if (!Character.isWhitespace(_buf[p])) {
+                    return true;
+                }
+            }
+            int ahead = p - _pos;
+            if (!fillMore()) {
+                return false;
+            }
+            p = _pos + ahead;
+        }
+    }
+
+    /** Returns true iff C ends a line. */
+    private static boolean isLineEnd(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029'
+            || c == '\u0085';
+    }
+
+    /** Consume the line end at the current position and finish the
+     *  current line. */
+    private void endLine() {
+        char c = _buf[_pos];
+        _pos += 1;
+        if (c == '\r' && (_pos < _limit || fill()) && _buf[_pos] == '\n') {
+            _pos += 1;
+        }
+        _inLine = false;
+    }
+
+    /** Refill my buffer, which must be exhausted.  Returns false at the end
+     *  of the input. */
+    private boolean fill() {
+        _pos = _limit = 0;
+        return fillMore();
+    }
+
+    /** Read more input after the unconsumed characters in my buffer,
+     *  moving them to the front or enlarging the buffer as needed.
+     *  Returns false at the end of the input. */
+    private boolean fillMore() {
+        if (_pos > 0) {
+            System.arraycopy(_buf, _pos, _buf, 0, _limit - _pos);
+            _limit -= _pos;
+            _pos = 0;
+        } else if (_limit == _buf.length) {
+            _buf = Arrays.copyOf(_buf, 2 * _buf.length);
+        }
+        try {
+            int n = _source.read(_buf, _limit, _buf.length - _limit);
+            while (n == 0) {
+                n = _source.read(_buf, _limit, _buf.length - _limit);
+            }
+            if (n < 0) {
+                return false;
+            }
+            _limit += n;
+            return true;
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Size of my buffer, in characters. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Source of my text. */
+    private final Reader _source;
+
+    /** Buffered input: _buf[_pos .. _limit-1] are not yet consumed. */
+    private char[] _buf;
+
+    /** Position of the next unconsumed character in _buf. */
+    private int _pos;
+
+    /** End of the valid characters in _buf. */
+    private int _limit;
+
+    /** True iff a line has been started and not yet ended. */
+    private boolean _inLine;
+
+}
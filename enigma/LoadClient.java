@@ -0,0 +1,167 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A load generator for EnigmaServer.  It opens a number of concurrent
+ *  connections to a server on the loopback interface, sends each the same
+ *  number of requests in pipelined batches, and reports the overall
+ *  throughput and the median and 99th-percentile latency of a request
+ *  (from the sending of its batch to the arrival of its response).
+ *  @author Mohak Buch
+ */
+class LoadClient {
+
+    /** Run a load test as described by ARGS: PORT CONNECTIONS REQUESTS
+     *  SETTINGS [MESSAGE [DEPTH]], where REQUESTS is the number of requests
+     *  per connection, SETTINGS is the settings line sent with each
+     *  request, MESSAGE the message (default a pangram), and DEPTH the
+     *  number of requests pipelined in each batch (default 1). */
+    public static void main(String... args) throws InterruptedException {
+        if (args.length < 4 || args.length > 6) {
+            System.err.println("Usage: java enigma.LoadClient PORT "
+                               + "CONNECTIONS REQUESTS SETTINGS [MESSAGE "
+                               + "[DEPTH]]");
+            System.exit(1);
+        }
+        LoadClient client = new LoadClient(
+            Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+            Integer.parseInt(args[2]), args[3],
+            args.length > 4 ? args[4] : DEFAULT_MESSAGE,
+            args.length > 5 ? Integer.parseInt(args[5]) : 1);
+        client.run();
+        System.out.println(client.report());
+    }
+
+    /** A load test against the server on PORT with CONNECTIONS
+     *  connections, each sending REQUESTS requests of SETTINGS and MESSAGE
+     *  in batches of DEPTH. */
+    LoadClient(int port, int connections, int requests, String settings,
+               String message, int depth) {
+        _port = port;
+        _connections = connections;
+        _requests = requests;
+        _settings = settings;
+        _message = message;
+        _depth = Math.max(1, depth);
+        _latencies = new long[connections][];
+    }
+
+    /** Run the test, waiting for every connection to finish. */
+    void run() throws InterruptedException {
+        ExecutorService threads = EnigmaServer.newThreadPerTaskExecutor();
+        long start = System.nanoTime();
+        for (int i = 0; i < _connections; i += 1) {
+            int k = i;
+            threads.execute(() -> _latencies[k] = connection());
+        }
+        threads.shutdown();
+        threads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        _elapsed = System.nanoTime() - start;
+    }
+
+    /** Returns a summary of the results of run(). */
+    String report() {
+        long[] all = Arrays.stream(_latencies)
+            .filter(l -> l != null).flatMapToLong(Arrays::stream).toArray();
+        Arrays.sort(all);
+        double seconds = _elapsed / 1e9;
+        return String.format(
+            "%d connections, %d requests (%d failed) in %.3f s: "
+            + "%.0f requests/s, %.0f chars/s; latency p50 %.3f ms, "
+            + "p99 %.3f ms, max %.3f ms",
+            _connections, all.length, _failures.get(), seconds,
+            all.length / seconds, all.length * _message.length() / seconds,
+            percentile(all, 0.50), percentile(all, 0.99),
+            percentile(all, 1.0));
+    }
+
+    /** Returns the latency, in milliseconds, below which the fraction P of
+     *  the sorted LATENCIES (in nanoseconds) fall. */
+    private static double percentile(long[] latencies, double p) {
+        if (latencies.length == 0) {
+            return 0;
+        }
+        int k = (int) Math.ceil(p * latencies.length) - 1;
+        return latencies[Math.max(0, k)] / 1e6;
+    }
+
+    /** Make one connection and send it all its requests.  Returns the
+     *  latencies of the requests answered, in nanoseconds. */
+    private long[] connection() {
+        long[] latencies = new long[_requests];
+        int done = 0;
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        _port)) {
+            socket.setTcpNoDelay(true);
+            Writer out = new OutputStreamWriter(socket.getOutputStream(),
+                                                StandardCharsets.UTF_8);
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                socket.getInputStream(), StandardCharsets.UTF_8));
+            String request = _settings + "\n" + _message + "\n";
+            while (done < _requests) {
+                int batch = Math.min(_depth, _requests - done);
+                long sent = System.nanoTime();
+                for (int i = 0; i < batch; i += 1) {
+                    out.write(request);
+                }
+                out.flush();
+                for (int i = 0; i < batch; i += 1) {
+                    String response = in.readLine();
+                    if (response == null) {
+                        throw new IOException("connection closed");
+                    }
+                    if (response.startsWith("Error:")) {
+                        _failures.incrementAndGet();
+                    }
+                    latencies[done++] = System.nanoTime() - sent;
+                }
+            }
+        } catch (IOException excp) {
+            _failures.addAndGet(_requests - done);
+        }
+        return Arrays.copyOf(latencies, done);
+    }
+
+    /** Message sent when none is given. */
+    static final String DEFAULT_MESSAGE =
+        "THE QUICK BROWN FOX JUMPS OVER THE LAZY DOG";
+
+    /** Server port. */
+    private final int _port;
+
+    /** Number of concurrent connections. */
+    private final int _connections;
+
+    /** Number of requests sent on each connection. */
+    private final int _requests;
+
+    /** Settings line sent with each request. */
+    private final String _settings;
+
+    /** Message sent with each request. */
+    private final String _message;
+
+    /** Number of requests sent before waiting for their responses. */
+    private final int _depth;
+
+    /** _latencies[K] holds the request latencies of connection K. */
+    private final long[][] _latencies;
+
+    /** Number of requests that failed or were never answered. */
+    private final AtomicInteger _failures = new AtomicInteger();
+
+    /** Duration of run(), in nanoseconds. */
+    private long _elapsed;
+
+}
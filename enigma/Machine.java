@@ -1,12 +1,17 @@
 package enigma;
 
-import net.sf.saxon.functions.ConstantFunction;
-
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
 
-/** Class that represents a complete enigma machine.
+/** Class that represents a complete enigma machine.  The wiring of its
+ *  rotors comes from a MachineSpec, which may be shared with any number of
+ *  other machines; a machine itself holds only its choice of rotors, their
+ *  settings, its plugboard and scratch tables derived from them, and never
+ *  modifies Rotor objects.
  *  @author Mohak Buch
  */
 class Machine {
@@ -17,28 +22,67 @@ class Machine {
      *  */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
-        _numRotors = numRotors;
-        _alphabet = alpha;
-        _numPawls = pawls;
-        _allRotors = allRotors;
-        _rotors = new HashMap<>();
+        this(new MachineSpec(alpha, numRotors, pawls, allRotors));
+    }
 
+    /** A new Enigma machine as described by SPEC, with no rotors
+     *  inserted. */
+    Machine(MachineSpec spec) {
+        _spec = spec;
+        _alphabet = spec.alphabet();
+    }
+
+    /** A machine that shares OTHER's spec, rotor choice, plugboard,
+     *  lookup tables and stepping schedule, but has its own copy of
+     *  OTHER's rotor settings, so that it can convert part of a message
+     *  on another thread. */
+    private Machine(Machine other) {
+        this(other._spec);
+        _slots = other._slots;
+        _notches = other._notches;
+        _ratchets = other._ratchets;
+        _forward = other._forward;
+        _inverse = other._inverse;
+        _fastSlot = other._fastSlot;
+        _stack = new int[other._stack.length];
+        _stackStale = true;
+        _movers = other._movers;
+        _tableBudget = other._tableBudget;
+        _table = other._table;
+        _next = other._next;
+        _scheduleBudget = other._scheduleBudget;
+        _schedule = other._schedule;
+        _scheduleLoop = other._scheduleLoop;
+        _scheduleIndex = other._scheduleIndex;
+        _scheduleFailed = other._scheduleFailed;
+        _packBits = other._packBits;
+        _stackBits = other._stackBits;
+        _notchPrefix = other._notchPrefix;
+        _openPositions = other._openPositions;
+        _seekable = other._seekable;
+        _settings = other._settings.clone();
+        _rings = other._rings;
+        _plugIn = other._plugIn;
+        _plugOut = other._plugOut;
+    }
 
+    /** Returns the spec describing my alphabet and available rotors. */
+    MachineSpec spec() {
+        return _spec;
     }
 
     /** Return the number of rotor slots I have.
      * @return num rotors
      * */
     int numRotors() {
-        return _numRotors;
+        return _spec.numRotors();
     }
 
     /** Return the number pawls (and thus rotating rotors) I have.
      * @return number pawls
      * */
     int numPawls() {
-        return _numPawls;
-
+        return _spec.numPawls();
     }
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
@@ -46,53 +90,258 @@ class Machine {
      *  Initially, all rotors are set at their 0 setting. */
 
     void insertRotors(String[] rotors) {
-        orderedRotors = new ArrayList<>();
-        HashMap<String, Rotor> map = new HashMap<>();
-        for (Rotor rot : _allRotors) {
-            map.put(rot.name().toUpperCase(), rot);
-        }
-
-        for (int i = 0; i < rotors.length; i++) {
-            if (map.containsKey(rotors[i].toUpperCase())) {
-                if (orderedRotors.contains(map.get(rotors[i].toUpperCase()))) {
-                    throw new EnigmaException("Duplicate rotor name");
-                } else {
-                    orderedRotors.add(map.get(rotors[i].toUpperCase()));
+        MachineSpec spec = _spec;
+        int[] slots = new int[rotors.length];
+        int count = 0;
+        for (String name : rotors) {
+            int r = spec.rotorIndex(name);
+            if (r >= 0) {
+                for (int i = 0; i < count; i++) {
+                    if (slots[i] == r) {
+                        throw new EnigmaException("Duplicate rotor name");
+                    }
                 }
+                slots[count++] = r;
             }
         }
-
-        Rotor zero = orderedRotors.get(0);
-        if (!zero.reflecting() || zero.rotates()) {
+        if (count == 0 || !spec.reflecting(slots[0])
+            || spec.rotates(slots[0])) {
             throw new EnigmaException("Does not have functional reflector");
         }
 
+        _slots = Arrays.copyOf(slots, count);
+        _notches = new boolean[count][];
+        _ratchets = new boolean[count];
+        _forward = new int[count][];
+        _inverse = new int[count][];
+        _notchPrefix = new int[count][];
+        _openPositions = new int[count][];
+        _settings = new int[count];
+        _rings = new int[count];
+        _fastSlot = Math.max(1, count - 1);
+        if (_stack == null) {
+            _stack = new int[_alphabet.size()];
+        }
+        _stackStale = true;
+        _seekable = true;
+        int movers = 0;
+        for (int i = 0; i < count; i++) {
+            int r = _slots[i];
+            _notches[i] = spec.notches(r);
+            _ratchets[i] = spec.rotates(r);
+            _forward[i] = spec.forward(r);
+            _inverse[i] = spec.inverse(r);
+            _notchPrefix[i] = spec.notchPrefix(r);
+            _openPositions[i] = spec.openPositions(r);
+            _seekable &= spec.seekable(r);
+            movers += _ratchets[i] ? 1 : 0;
+        }
+        _movers = new int[movers];
+        for (int i = count - 1, j = 0; i >= 0; i--) {
+            if (_ratchets[i]) {
+                _movers[j++] = i;
+            }
+        }
+        _table = null;
+        dropSchedule();
     }
 
     /**
      * resets rotors.
      */
     public void fixRotors() {
-        orderedRotors = new ArrayList<>();
+        _slots = NO_ROTORS;
+        _settings = NO_ROTORS;
+        _rings = NO_ROTORS;
+        _movers = NO_ROTORS;
+        _fastSlot = 0;
+        _stackStale = true;
+        _table = null;
+        dropSchedule();
+    }
+
+    /** Throw an EnigmaException unless I have rotors inserted. */
+    private void checkRotors() {
+        if (_slots.length == 0) {
+            throw error("no rotors inserted");
+        }
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
-     *  to the leftmost rotor setting (not counting the reflector).  */
+     *  to the leftmost rotor setting (not counting the reflector).  All
+     *  ring settings become the first letter of the alphabet.  A
+     *  character not in my alphabet sets its rotor to the last letter. */
     void setRotors(String setting) {
+        setRotors(setting, null, false);
+    }
+
+    /** Set my rotors according to SETTING, as for setRotors(String), and
+     *  their ring settings according to RING, a string of the same length
+     *  whose letters give the offset of each rotor's wiring from its ring,
+     *  or null for no offsets.  Notches stay with the letters shown in the
+     *  window.  The offsets are folded into shifted copies of the wiring
+     *  tables here, so they cost nothing per character.  Unlike
+     *  setRotors(String), this rejects characters not in my alphabet. */
+    void setRotors(String setting, String ring) {
+        setRotors(setting, ring, true);
+    }
+
+    /** Set my rotors and rings as for setRotors(SETTING, RING), except
+     *  that unless STRICT, a character of SETTING that is not in my
+     *  alphabet stands for its last letter. */
+    private void setRotors(String setting, String ring, boolean strict) {
         if (setting.length() != (numRotors() - 1)) {
             throw new EnigmaException("Wheel settings too short");
         }
-        for (int i = 0; i < orderedRotors.size() - 1; i++) {
-            orderedRotors.get(i + 1).set(setting.charAt(i));
+        if (ring != null && ring.length() != setting.length()) {
+            throw error("ring settings must have %d characters",
+                        setting.length());
         }
+        int n = _alphabet.size();
+        for (int i = 1; i < _slots.length; i++) {
+            int posn = _alphabet.toInt(setting.charAt(i - 1));
+            int offset =
+                ring == null ? 0 : _alphabet.toInt(ring.charAt(i - 1));
+            if (posn < 0 && strict) {
+                throw error("setting %c not in alphabet",
+                            setting.charAt(i - 1));
+            }
+            if (offset < 0) {
+                throw error("ring setting %c not in alphabet",
+                            ring.charAt(i - 1));
+            }
+            if (_spec.reflecting(_slots[i]) && (posn != 0 || offset != 0)) {
+                throw new EnigmaException("reflector has only one position");
+            }
+            _settings[i] = posn < 0 ? n - 1 : posn;
+            if (offset != _rings[i]) {
+                int r = _slots[i];
+                _forward[i] = Permutation.rotated(_spec.forward(r), offset);
+                _inverse[i] = _spec.inverse(r) == _spec.forward(r)
+                    ? _forward[i]
+                    : Permutation.rotated(_spec.inverse(r), offset);
+                _rings[i] = offset;
+            }
+        }
+        _stackStale = true;
+        _table = null;
+        dropSchedule();
+    }
 
-
+    /** Set my rotors to the settings SETTING, whose element K-1 is the
+     *  setting of slot K as an index in my alphabet, leaving the ring
+     *  settings as they are.  This is setRotors(String) for callers that
+     *  try many settings and already work with indices. */
+    void setRotors(int[] setting) {
+        if (setting.length != numRotors() - 1) {
+            throw error("expected %d rotor settings, got %d",
+                        numRotors() - 1, setting.length);
+        }
+        for (int i = 1; i < _slots.length; i++) {
+            int posn = setting[i - 1];
+            if (posn < 0 || posn >= _alphabet.size()) {
+                throw error("setting %d out of range", posn);
+            }
+            if (_spec.reflecting(_slots[i]) && posn != 0) {
+                throw new EnigmaException("reflector has only one position");
+            }
+            _settings[i] = posn;
+        }
+        _stackStale = true;
+        _table = null;
+        dropSchedule();
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
-        this._plugboard = plugboard;
+        _plugForward = plugboard.forwardTable();
+        _plugInverse = plugboard.inverseTable();
+        _plugTouched = null;
+        usePlugboard(plugboard.kind());
+    }
+
+    /** Set the plugboard to the permutation given in cycle notation by
+     *  characters START .. END-1 of CYCLES, as for the Permutation
+     *  constructor.  After the first call, this takes time proportional
+     *  to the number of plugged characters, not to the alphabet size. */
+    void setPlugboard(CharSequence cycles, int start, int end) {
+        int[] forward = _plugForward, inverse = _plugInverse;
+        int[] touched = _plugTouched;
+        if (touched == null) {
+            int n = _alphabet.size();
+            forward = new int[n];
+            inverse = new int[n];
+            touched = new int[2 * n];
+            _plugTouchedCount = touched.length + 1;
+        }
+        if (_plugTouchedCount > touched.length) {
+            for (int x = 0; x < forward.length; x++) {
+                forward[x] = inverse[x] = x;
+            }
+        } else {
+            for (int k = 0; k < _plugTouchedCount; k++) {
+                int x = touched[k];
+                forward[x] = inverse[x] = x;
+            }
+        }
+        _plugForward = forward;
+        _plugInverse = inverse;
+        _plugTouched = touched;
+        /* If parsing fails part way, the next call must reset in full. */
+        _plugTouchedCount = touched.length + 1;
+        _plugTouchedCount = 2 * Permutation.parseCycles(
+            cycles, start, end, _alphabet, forward, inverse, touched, null);
+        boolean identity = true, involution = true;
+        for (int k = 0; k < _plugTouchedCount; k += 2) {
+            int f = touched[k], t = touched[k + 1];
+            identity &= f == t;
+            involution &= forward[t] == f;
+        }
+        usePlugboard(identity ? Permutation.Kind.IDENTITY
+                     : involution ? Permutation.Kind.INVOLUTION
+                     : Permutation.Kind.GENERAL);
+    }
+
+    /** Have encipher apply the plugboard tables _plugForward and
+     *  _plugInverse, which form a permutation of kind KIND, in the
+     *  cheapest way: not at all for the identity, and with a single table
+     *  for an involution. */
+    private void usePlugboard(Permutation.Kind kind) {
+        if (kind == Permutation.Kind.IDENTITY) {
+            _plugIn = _plugOut = null;
+        } else if (kind == Permutation.Kind.INVOLUTION) {
+            _plugIn = _plugOut = _plugForward;
+        } else {
+            _plugIn = _plugForward;
+            _plugOut = _plugInverse;
+        }
+        _table = null;
+    }
+
+    /** Allow the lookup-table engine to use up to BYTES bytes.  When the
+     *  complete mapping for every setting of my moving rotors, together
+     *  with each setting's successor, fits in BYTES, bulk conversions
+     *  build it once (after each change of rotors, settings or plugboard)
+     *  and then convert each character with two array lookups.  Otherwise,
+     *  and by default (BYTES = 0), they use the normal rotor-by-rotor
+     *  path. */
+    void setTableBudget(long bytes) {
+        _tableBudget = bytes;
+        _table = null;
+    }
+
+    /** Allow the stepping schedule to use up to BYTES bytes.  When the
+     *  settings my moving rotors pass through from their current ones,
+     *  up to the end of the first full cycle, fit in BYTES at one int
+     *  each, they are computed once (after each change of rotors or
+     *  settings).  Each keystroke then takes the next entry instead of
+     *  testing notches, and advance, stateAt, period and parallel
+     *  conversion read settings from the schedule directly.  Otherwise,
+     *  and by default (BYTES = 0), the rotors step as usual. */
+    void setScheduleBudget(long bytes) {
+        _scheduleBudget = bytes;
+        dropSchedule();
     }
 
     /** Returns the result of converting the input character C (as an
@@ -104,85 +353,740 @@ class Machine {
      * @param c is the converted character
      */
     int convert(int c) {
+        checkRotors();
 
         if ((c >= 0 || c == -1) && (c <= _alphabet.size() - 1)) {
+            c = convert(c < 0 ? c + _alphabet.size() : c, _settings);
+        } else {
+            throw new EnigmaException("char not in alphabet");
+        }
 
-            c = _plugboard.permute(c);
-            Rotor right = orderedRotors.get(orderedRotors.size() - 1);
-            boolean turn = true;
-            boolean next = right.atNotch();
-            right.advance();
-            ArrayList<Rotor> advancer = new ArrayList<>();
-
-
-            for (int i = orderedRotors.size() - 2; i >= 0; i--) {
-                if (!next) {
-                    turn = false;
-                    next = orderedRotors.get(i).atNotch();
-                } else {
-                    next = orderedRotors.get(i).atNotch();
-                    advancer.add(orderedRotors.get(i));
-                    if (!turn && orderedRotors.get(i).rotates()) {
-                        advancer.add(right);
-                    }
-                    turn = true;
-                }
-                right = orderedRotors.get(i);
+
+        return c;
+    }
+
+    /** Returns the result of converting the character index C, which
+     *  must be in the range 0..alphabet size - 1, with my rotors at the
+     *  settings POS (indexed like my slots), after first advancing POS
+     *  one keystroke. */
+    private int convert(int c, int[] pos) {
+        boolean moved = pos == _settings && scheduleReady()
+            ? stepScheduled(pos) : step(pos);
+        if (moved || _stackStale) {
+            buildStack(pos);
+        }
+        return encipher(c, pos);
+    }
+
+    /** Returns the result of converting the character index C with my
+     *  rotors at the settings POS, without advancing them.  _stack must
+     *  be up to date for POS. */
+    private int encipher(int c, int[] pos) {
+        int[] plugIn = _plugIn, plugOut = _plugOut;
+        if (plugIn != null) {
+            c = plugIn[c];
+        }
+        c = scramble(c, pos);
+        return plugOut == null ? c : plugOut[c];
+    }
+
+    /** Returns the result of passing the character index C through my
+     *  rotors, but not my plugboard, at the settings POS.  _stack must be
+     *  up to date for POS. */
+    private int scramble(int c, int[] pos) {
+        int n = _alphabet.size();
+        int[][] forward = _forward, inverse = _inverse;
+        int fast = _fastSlot;
+        for (int i = pos.length - 1; i >= fast; i--) {
+            c = through(forward[i], pos[i], c, n);
+        }
+        c = _stack[c];
+        for (int i = fast; i < pos.length; i++) {
+            c = through(inverse[i], pos[i], c, n);
+        }
+        return c;
+    }
+
+    /** Returns the mappings my rotors, without my plugboard, apply on
+     *  each of my next LEN keystrokes: element T * N + X, where N is the
+     *  size of my alphabet, is what the character index X becomes on
+     *  keystroke T.  Does not change my settings.  An analysis that
+     *  tries many plugboards for one rotor setting can then decrypt with
+     *  two plugboard lookups and one table lookup per character. */
+    int[] scramblers(int len) {
+        checkRotors();
+        int n = _alphabet.size();
+        if ((long) len * n > Integer.MAX_VALUE) {
+            throw error("too many keystrokes: %d", len);
+        }
+        int[] result = new int[len * n];
+        scramblers(result, len);
+        return result;
+    }
+
+    /** Fill RESULT with the mappings of my next LEN keystrokes, as for
+     *  scramblers(int), so that a search can reuse one array. */
+    void scramblers(int[] result, int len) {
+        checkRotors();
+        int n = _alphabet.size();
+        int[] pos = _settings.clone();
+        for (int t = 0, k = 0; t < len; t++) {
+            if (step(pos) || t == 0) {
+                buildStack(pos);
             }
-            for (Rotor r: advancer) {
-                r.advance();
+            for (int x = 0; x < n; x++, k++) {
+                result[k] = scramble(x, pos);
             }
+        }
+        _stackStale = true;
+    }
 
-            for (int i = orderedRotors.size() - 1; i >= 0; i--) {
+    /** Returns the result of passing C through the rotor wiring TABLE
+     *  (a permutation table of size N) at setting S. */
+    private static int through(int[] table, int s, int c, int n) {
+        int k = c + s;
+        c = table[k >= n ? k - n : k] - s;
+        return c < 0 ? c + n : c;
+    }
 
-                c = orderedRotors.get(i).convertForward(c);
+    /** Recompute _stack, the combined mapping of every slot to the left
+     *  of _fastSlot (forward, through the reflector and back again) at
+     *  the rotor settings POS.  Only the rotors from _fastSlot rightward
+     *  then need to be applied individually for each character. */
+    private void buildStack(int[] pos) {
+        int n = _alphabet.size();
+        int[][] forward = _forward, inverse = _inverse;
+        int fast = _fastSlot;
+        for (int x = 0; x < n; x++) {
+            int c = x;
+            for (int i = fast - 1; i >= 0; i--) {
+                c = through(forward[i], pos[i], c, n);
+            }
+            for (int i = 1; i < fast; i++) {
+                c = through(inverse[i], pos[i], c, n);
             }
+            _stack[x] = c;
+        }
+        _stackStale = false;
+    }
 
-            for (int i = 1; i < orderedRotors.size(); i++) {
-                c = orderedRotors.get(i).convertBackward(c);
+    /** Advance the rotor settings POS by one keystroke.  The rightmost
+     *  rotor always advances; any other rotor advances when the rotor to
+     *  its right is at a notch, or when it is itself at a notch and the
+     *  rotor to its left has a pawl (the double step).  All notches are
+     *  sampled before any rotor moves, and rotors without pawls never
+     *  move.  Returns true iff a rotor other than the rightmost moved. */
+    private boolean step(int[] pos) {
+        boolean[][] notches = _notches;
+        boolean[] ratchets = _ratchets;
+        int n = _alphabet.size();
+        int last = pos.length - 1;
+        boolean kick = true, moved = false;
+        for (int i = last; i > 0; i--) {
+            boolean[] notch = notches[i];
+            boolean atNotch = notch != null && notch[pos[i]];
+            if (ratchets[i] && (kick || (atNotch && ratchets[i - 1]))) {
+                pos[i] = pos[i] + 1 == n ? 0 : pos[i] + 1;
+                moved |= i != last;
             }
-            c = _plugboard.invert(c);
+            kick = atNotch;
+        }
+        return moved;
+    }
+
+    /** Advance my rotors as if N characters had been converted.  The new
+     *  settings are computed from the notch positions directly, in time
+     *  that depends only on the number of rotors, not on N. */
+    void advance(long n) {
+        if (n < 0) {
+            throw error("cannot advance by %d characters", n);
+        }
+        scheduleReady();
+        skip(n);
+    }
+
+    /** Returns my rotor settings, in the form accepted by
+     *  setRotors(int[]). */
+    int[] settings() {
+        int[] setting = new int[numRotors() - 1];
+        for (int i = 1; i < _slots.length; i++) {
+            setting[i - 1] = _settings[i];
+        }
+        return setting;
+    }
+
+    /** Returns the rotor settings, in the form accepted by setRotors, that
+     *  I will have after converting N more characters.  My own settings
+     *  are unchanged. */
+    String stateAt(long n) {
+        if (n < 0) {
+            throw error("cannot advance by %d characters", n);
+        }
+        int[] pos = _settings.clone();
+        if (scheduleReady()) {
+            unpack(_schedule[scheduleIndex(_scheduleIndex, n)], pos);
         } else {
-            throw new EnigmaException("char not in alphabet");
+            seek(pos, n);
+        }
+        char[] setting = new char[Math.max(0, pos.length - 1)];
+        for (int i = 1; i < pos.length; i++) {
+            setting[i - 1] = _alphabet.toChar(pos[i]);
+        }
+        return new String(setting);
+    }
+
+    /** Advance the rotor settings POS by COUNT keystrokes.
+     *
+     *  Let S(i, m) be the number of times the rotor in slot I moves during
+     *  the first M keystrokes.  The rightmost rotor moves every time.  A
+     *  rotor at a notch always leaves it on the next keystroke (the double
+     *  step), so the number of keystrokes on which slot I kicks slot I-1
+     *  is just the number of notches among the first S(i, m) positions it
+     *  has left.  A rotor whose left neighbor has no pawl therefore moves
+     *  once per kick from its right.  Any other rotor moves once per kick,
+     *  plus once more for each notch it lands on, except that it only
+     *  leaves a notch reached by the very last kick if that kick came
+     *  before keystroke M.  S(i, m) thus depends on S(i + 1, m) and
+     *  S(i + 1, m - 1); MOVES[I][D] holds S(i, COUNT - D). */
+    private void seek(int[] pos, long count) {
+        if (count == 0) {
+            return;
         }
+        if (!_seekable) {
+            for (long t = 0; t < count; t++) {
+                step(pos);
+            }
+            return;
+        }
+        int n = _alphabet.size();
+        long[][] moves = new long[pos.length][];
+        for (int i = pos.length - 1; i > 0; i--) {
+            long[] right = i + 1 < pos.length ? moves[i + 1] : null;
+            moves[i] = new long[i];
+            for (int d = 0; d < i && d < count; d++) {
+                moves[i][d] = moves(i, count - d, pos, right, d);
+            }
+        }
+        for (int i = 1; i < pos.length; i++) {
+            pos[i] = (int) ((pos[i] + moves[i][0]) % n);
+        }
+    }
 
+    /** Returns S(I, M) as described for seek, where the rotor settings
+     *  before the first keystroke are POS and RIGHT[D] and RIGHT[D + 1]
+     *  are S(I + 1, M) and S(I + 1, M - 1).  M must be positive. */
+    private long moves(int i, long m, int[] pos, long[] right, int d) {
+        int last = pos.length - 1;
+        if (!_ratchets[i]) {
+            return 0;
+        }
+        if (i == last) {
+            return m;
+        }
+        int n = _alphabet.size();
+        long kicks = notchesPassed(i + 1, pos[i + 1], right[d]);
+        if (!_ratchets[i - 1]) {
+            return kicks;
+        }
+        boolean kickedAtEnd =
+            atNotch(i + 1, (int) ((pos[i + 1] + right[d + 1]) % n));
+        long moved = 0;
+        int q = pos[i];
+        if (atNotch(i, q)) {
+            moved = 1;
+            q = (q + 1) % n;
+            if (atNotch(i + 1, pos[i + 1])) {
+                kicks -= 1;
+            }
+        }
+        if (kicks == 0) {
+            return moved;
+        }
+        int[] prefix = _notchPrefix[i];
+        long span = kicks;
+        if (prefix != null) {
+            int[] open = _openPositions[i];
+            long target = q - prefix[q] + kicks - 1;
+            span = target / open.length * n + open[(int) (target % open.length)]
+                + 1 - q;
+        }
+        if (atNotch(i, (int) ((q + span) % n)) && !kickedAtEnd) {
+            span += 1;
+        }
+        return moved + span;
+    }
 
-        return c;
+    /** Returns true iff the rotor in slot I is at a notch at setting P. */
+    private boolean atNotch(int i, int p) {
+        return _notches[i] != null && _notches[i][p];
+    }
+
+    /** Returns the number of notches of the rotor in slot I among the LEN
+     *  consecutive settings starting at P. */
+    private long notchesPassed(int i, int p, long len) {
+        int[] prefix = _notchPrefix[i];
+        if (prefix == null) {
+            return 0;
+        }
+        int n = _alphabet.size();
+        long end = p + len;
+        return end / n * prefix[n] + prefix[(int) (end % n)] - prefix[p];
+    }
+
+    /** Returns the period of my rotor settings: the number of keystrokes
+     *  in the cycle of settings they eventually enter, and after which
+     *  they repeat.  It is at most the number of settings of my moving
+     *  rotors, and may be less, since double stepping skips some.  Read
+     *  from my stepping schedule if I have one; otherwise takes time
+     *  proportional to the period. */
+    long period() {
+        if (scheduleReady()) {
+            return _schedule.length - _scheduleLoop;
+        }
+        return cycle(_settings, Long.MAX_VALUE)[1];
+    }
+
+    /** Returns { MU, LAMBDA } for the rotor settings that follow POS,
+     *  which is unchanged: after MU keystrokes they enter a cycle of
+     *  LAMBDA settings that then repeats forever.  Returns null if finding
+     *  them would take more than LIMIT keystrokes.  Uses Brent's cycle
+     *  detection, which need not remember the settings passed. */
+    private long[] cycle(int[] pos, long limit) {
+        int[] tortoise = pos.clone(), hare = pos.clone();
+        long power = 1, lambda = 1;
+        step(hare);
+        for (long steps = 1; !Arrays.equals(tortoise, hare); steps++) {
+            if (steps >= limit) {
+                return null;
+            }
+            if (power == lambda) {
+                System.arraycopy(hare, 0, tortoise, 0, hare.length);
+                power *= 2;
+                lambda = 0;
+            }
+            step(hare);
+            lambda += 1;
+        }
+        System.arraycopy(pos, 0, tortoise, 0, pos.length);
+        System.arraycopy(pos, 0, hare, 0, pos.length);
+        seek(hare, lambda);
+        long mu = 0;
+        while (!Arrays.equals(tortoise, hare)) {
+            step(tortoise);
+            step(hare);
+            mu += 1;
+        }
+        return new long[] { mu, lambda };
     }
 
+    /** Returns true iff the stepping schedule may be used, building it
+     *  from my current settings if it is missing and fits in my
+     *  budget. */
+    private boolean scheduleReady() {
+        if (_schedule != null) {
+            return true;
+        } else if (_scheduleFailed || _scheduleBudget <= 0) {
+            return false;
+        }
+        int bits = 32 - Integer.numberOfLeadingZeros(_alphabet.size() - 1);
+        long limit = Math.min(_scheduleBudget / 4, MAX_SCHEDULE);
+        long[] cycle = bits * _movers.length > Integer.SIZE ? null
+            : cycle(_settings, 4 * limit + 4);
+        if (cycle == null || cycle[0] + cycle[1] > limit) {
+            _scheduleFailed = true;
+            return false;
+        }
+        _packBits = bits;
+        _stackBits = 0;
+        for (int j = 0; j < _movers.length; j++) {
+            if (_movers[j] != _settings.length - 1) {
+                _stackBits |= ((1 << bits) - 1) << (j * bits);
+            }
+        }
+        int[] schedule = new int[(int) (cycle[0] + cycle[1])];
+        int[] work = _settings.clone();
+        for (int k = 0; k < schedule.length; k++) {
+            schedule[k] = pack(work);
+            step(work);
+        }
+        _schedule = schedule;
+        _scheduleLoop = (int) cycle[0];
+        _scheduleIndex = 0;
+        return true;
+    }
 
+    /** Discard my stepping schedule, which no longer describes my
+     *  settings. */
+    private void dropSchedule() {
+        _schedule = null;
+        _scheduleFailed = false;
+    }
 
+    /** Advance the rotor settings POS, which must be my own, by one
+     *  keystroke along my stepping schedule, as step(POS) would.  Returns
+     *  true iff a rotor other than the rightmost moved. */
+    private boolean stepScheduled(int[] pos) {
+        int[] schedule = _schedule;
+        int k = _scheduleIndex, old = schedule[k];
+        k = k + 1 == schedule.length ? _scheduleLoop : k + 1;
+        _scheduleIndex = k;
+        int packed = schedule[k], diff = packed ^ old;
+        if ((diff & _stackBits) == 0) {
+            if (diff != 0) {
+                pos[pos.length - 1] = packed & ((1 << _packBits) - 1);
+            }
+            return false;
+        }
+        unpack(packed, pos);
+        return true;
+    }
+
+    /** Advance my settings by COUNT keystrokes, along my stepping schedule
+     *  if I have one, and otherwise as for seek. */
+    private void skip(long count) {
+        if (_schedule != null) {
+            _scheduleIndex = scheduleIndex(_scheduleIndex, count);
+            unpack(_schedule[_scheduleIndex], _settings);
+        } else {
+            seek(_settings, count);
+        }
+        _stackStale = true;
+    }
+
+    /** Returns the index in my stepping schedule COUNT keystrokes after
+     *  index K. */
+    private int scheduleIndex(int k, long count) {
+        int len = _schedule.length;
+        if (count < len - k) {
+            return k + (int) count;
+        }
+        return _scheduleLoop
+            + (int) ((count - (len - k)) % (len - _scheduleLoop));
+    }
+
+    /** Returns the moving rotor settings in POS packed into one int,
+     *  _packBits bits per rotor, rightmost rotor lowest. */
+    private int pack(int[] pos) {
+        int packed = 0;
+        for (int j = 0; j < _movers.length; j++) {
+            packed |= pos[_movers[j]] << (j * _packBits);
+        }
+        return packed;
+    }
+
+    /** Set the moving rotor settings in POS to those packed in PACKED. */
+    private void unpack(int packed, int[] pos) {
+        int mask = (1 << _packBits) - 1;
+        for (int j = 0; j < _movers.length; j++) {
+            pos[_movers[j]] = (packed >>> (j * _packBits)) & mask;
+        }
+    }
+
+    /** Returns true iff the lookup-table engine may be used with the
+     *  current settings of my non-moving rotors POS, building its tables
+     *  if they are missing and fit in my budget. */
+    private boolean tableReady(int[] pos) {
+        if (_table != null) {
+            return true;
+        }
+        int n = _alphabet.size();
+        long states = 1;
+        for (int i = 0; i < _movers.length && states <= Integer.MAX_VALUE;
+             i++) {
+            states *= n;
+        }
+        if (_tableBudget <= 0 || states * n > Integer.MAX_VALUE
+            || 4 * states * (n + 1) > _tableBudget) {
+            return false;
+        }
+        int[] table = new int[(int) states * n];
+        int[] next = new int[(int) states];
+        int[] work = pos.clone();
+        for (int state = 0; state < states; state++) {
+            decode(state, work);
+            buildStack(work);
+            for (int c = 0, k = state * n; c < n; c++, k++) {
+                table[k] = encipher(c, work);
+            }
+            step(work);
+            next[state] = encode(work);
+        }
+        _stackStale = true;
+        _table = table;
+        _next = next;
+        return true;
+    }
+
+    /** Returns the lookup-table state number of the moving rotor
+     *  settings in POS. */
+    private int encode(int[] pos) {
+        int n = _alphabet.size();
+        int state = 0;
+        for (int i = _movers.length - 1; i >= 0; i--) {
+            state = state * n + pos[_movers[i]];
+        }
+        return state;
+    }
+
+    /** Set the moving rotor settings in POS to those of the lookup-table
+     *  state number STATE. */
+    private void decode(int state, int[] pos) {
+        int n = _alphabet.size();
+        for (int mover : _movers) {
+            pos[mover] = state % n;
+            state /= n;
+        }
+    }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly.
      * @return converted character
      *  */
     String convert(String msg) {
-        String converting = "";
-        for (int i = 0; i < msg.length(); i++) {
-            char m = msg.charAt(i);
+        char[] chars = msg.toCharArray();
+        int len = convert(chars, 0, chars.length, chars, 0);
+        return new String(chars, 0, len);
+    }
+
+    /** Convert the LEN character indices of IN starting at OFF, each in
+     *  the range 0 .. alphabet size - 1, writing the results into OUT
+     *  starting at OUTOFF and updating the state of the rotors
+     *  accordingly.  OUT may be IN itself. */
+    void convert(int[] in, int off, int len, int[] out, int outOff) {
+        checkRotors();
+        int[] pos = _settings;
+        for (int i = 0; i < len; i++) {
+            out[outOff + i] = convert(in[off + i], pos);
+        }
+    }
+
+    /** Convert the LEN characters of IN starting at OFF, writing the
+     *  result into OUT starting at OUTOFF and updating the state of the
+     *  rotors accordingly.  Blanks in IN are skipped, so at most LEN
+     *  characters are written; OUT may be IN itself.  Returns the number
+     *  of characters written. */
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        checkRotors();
+        return convertBlock(in, off, len, out, outOff, _settings);
+    }
+
+    /** Convert the LEN characters of IN starting at OFF into OUT starting
+     *  at OUTOFF, as for convert(char[], int, int, char[], int), but with
+     *  my rotors at the settings POS, which are updated.  Returns the
+     *  number of characters written. */
+    private int convertBlock(char[] in, int off, int len, char[] out,
+                             int outOff, int[] pos) {
+        Alphabet alphabet = _alphabet;
+        int n = alphabet.size();
+        int k = outOff;
+        if (tableReady(pos)) {
+            int[] table = _table, next = _next;
+            int state = encode(pos);
+            for (int i = off, end = off + len; i < end; i++) {
+                char m = in[i];
+                if (m != ' ') {
+                    int c = alphabet.toInt(m);
+                    if (c < 0) {
+                        c = n - 1;
+                    }
+                    state = next[state];
+                    out[k++] = alphabet.toChar(table[state * n + c]);
+                }
+            }
+            decode(state, pos);
+            _stackStale = true;
+            if (_schedule != null && pos == _settings) {
+                _scheduleIndex = scheduleIndex(_scheduleIndex, k - outOff);
+            }
+        } else {
+            for (int i = off, end = off + len; i < end; i++) {
+                char m = in[i];
+                if (m != ' ') {
+                    int c = alphabet.toInt(m);
+                    if (c < 0) {
+                        c = n - 1;
+                    }
+                    out[k++] = alphabet.toChar(convert(c, pos));
+                }
+            }
+        }
+        return k - outOff;
+    }
+
+    /** Returns the encoding/decoding of MSG, as for convert(String), but
+     *  converting long messages in parallel. */
+    String convertParallel(String msg) {
+        char[] in = msg.toCharArray();
+        char[] out = new char[in.length];
+        return new String(out, 0, convertParallel(in, 0, in.length, out, 0));
+    }
+
+    /** Convert the LEN characters of IN starting at OFF into OUT starting
+     *  at OUTOFF exactly as convert(char[], int, int, char[], int) would,
+     *  but split into chunks that are converted in parallel.  The setting
+     *  at the start of each chunk comes from my stepping schedule, if I
+     *  have one, or else as for advance(long), so the result is identical
+     *  to a sequential conversion.  OUT must not overlap IN.
+     *  Returns the number of characters written. */
+    int convertParallel(char[] in, int off, int len, char[] out,
+                        int outOff) {
+        checkRotors();
+        int chunks = (len + PARALLEL_CHUNK - 1) / PARALLEL_CHUNK;
+        if (chunks < 2 || !scheduleReady() && !_seekable) {
+            return convert(in, off, len, out, outOff);
+        }
+        int[] pos = _settings;
+        tableReady(pos);
+        int[] starts = new int[chunks + 1];
+        IntStream.range(0, chunks).parallel().forEach(j -> {
+            int count = 0;
+            for (int i = off + j * PARALLEL_CHUNK,
+                     end = Math.min(off + len, i + PARALLEL_CHUNK);
+                 i < end; i++) {
+                count += in[i] != ' ' ? 1 : 0;
+            }
+            starts[j + 1] = count;
+        });
+        for (int j = 0; j < chunks; j++) {
+            starts[j + 1] += starts[j];
+        }
+        IntStream.range(0, chunks).parallel().forEach(j -> {
+            Machine part = new Machine(this);
+            part.skip(starts[j]);
+            int from = off + j * PARALLEL_CHUNK;
+            part.convertBlock(in, from,
+                              Math.min(PARALLEL_CHUNK, off + len - from),
+                              out, outOff + starts[j], part._settings);
+        });
+        skip(starts[chunks]);
+        return starts[chunks];
+    }
+
+    /** Convert the remaining characters of IN into OUT, as for
+     *  convert(char[], int, int, char[], int), advancing the positions
+     *  of both buffers.  Stops early if OUT fills up.  Returns the number
+     *  of characters written. */
+    int convert(CharBuffer in, CharBuffer out) {
+        checkRotors();
+        if (in.hasArray() && out.hasArray()
+            && out.remaining() >= in.remaining()) {
+            int len = in.remaining();
+            int written =
+                convert(in.array(), in.arrayOffset() + in.position(), len,
+                        out.array(), out.arrayOffset() + out.position());
+            in.position(in.position() + len);
+            out.position(out.position() + written);
+            return written;
+        }
+        Alphabet alphabet = _alphabet;
+        int n = alphabet.size();
+        int[] pos = _settings;
+        int written = 0;
+        while (in.hasRemaining() && out.hasRemaining()) {
+            char m = in.get();
             if (m != ' ') {
-                int letter = _alphabet.toInt(m);
-                converting += _alphabet.toChar(convert(letter));
+                int c = alphabet.toInt(m);
+                if (c < 0) {
+                    c = n - 1;
+                }
+                out.put(alphabet.toChar(convert(c, pos)));
+                written += 1;
             }
         }
-        return converting;
+        return written;
     }
 
+    /** Description of my alphabet and available rotors. */
+    private final MachineSpec _spec;
     /** @return final alphabet */
     private final Alphabet _alphabet;
-    /**@return num rotors: number of rotors */
-    private int _numRotors;
-    /** @return number of pawls*/
-    private int _numPawls;
-    /** @return _rotors */
-    private HashMap<String, Rotor> _rotors;
-    /** @return _rotors */
-    private Collection<Rotor> _allRotors;
-    /** @return _rotors */
-    private ArrayList<Rotor> orderedRotors;
-    /** @return _plugboard*/
-    private Permutation _plugboard;
+    /** My rotor slots, reflector first: _slots[K] is the number in _spec
+     *  of the rotor in slot K. */
+    private int[] _slots = NO_ROTORS;
+    /** _settings[K] is the current setting of the rotor in slot K. */
+    private int[] _settings = NO_ROTORS;
+    /** _notches[K] is the notch table of _slots[K] (null if it has none). */
+    private boolean[][] _notches;
+    /** _ratchets[K] is true iff _slots[K] has a pawl and can move. */
+    private boolean[] _ratchets;
+    /** _forward[K] is the forward table of _slots[K]'s permutation,
+     *  shifted by its ring setting. */
+    private int[][] _forward;
+    /** _inverse[K] is the inverse table of _slots[K]'s permutation,
+     *  shifted by its ring setting. */
+    private int[][] _inverse;
+    /** Index of the leftmost slot applied individually for each
+     *  character; all slots to its left are folded into _stack. */
+    private int _fastSlot;
+    /** Combined mapping of the slots left of _fastSlot at their current
+     *  settings. */
+    private int[] _stack;
+    /** True iff _stack must be rebuilt before it is next used. */
+    private boolean _stackStale;
+    /** Slot numbers of my moving rotors, rightmost first. */
+    private int[] _movers = NO_ROTORS;
+    /** Maximum size in bytes of the lookup-table engine's tables. */
+    private long _tableBudget;
+    /** Lookup-table engine: _table[S * N + C] is the conversion of C with
+     *  the moving rotors in state S (N being the alphabet size), or null
+     *  if not built. */
+    private int[] _table;
+    /** Lookup-table engine: _next[S] is the state following state S. */
+    private int[] _next;
+    /** Maximum size in bytes of the stepping schedule. */
+    private long _scheduleBudget;
+    /** Stepping schedule: _schedule[K] is my moving rotor settings, as
+     *  packed by pack, K keystrokes after those it was built from, up to
+     *  the end of their first cycle; or null if there is none. */
+    private int[] _schedule;
+    /** Index in _schedule of the first setting of the cycle: the one
+     *  that follows the last entry. */
+    private int _scheduleLoop;
+    /** Index in _schedule of my current settings. */
+    private int _scheduleIndex;
+    /** True iff the schedule for my current settings does not fit in my
+     *  budget. */
+    private boolean _scheduleFailed;
+    /** Number of bits per moving rotor in a packed setting. */
+    private int _packBits;
+    /** Bits of a packed setting that belong to moving rotors other than
+     *  the rightmost. */
+    private int _stackBits;
+    /** _notchPrefix[K][P] is the number of notches of _slots[K] at
+     *  settings below P (null if it has no notches). */
+    private int[][] _notchPrefix;
+    /** _rings[K] is the ring setting of the rotor in _slots[K], already
+     *  folded into _forward[K] and _inverse[K]. */
+    private int[] _rings = NO_ROTORS;
+    /** _openPositions[K] lists the settings of _slots[K] that are not
+     *  notches, in increasing order. */
+    private int[][] _openPositions;
+    /** True iff advance(long) may count keystrokes arithmetically. */
+    private boolean _seekable;
+    /** Forward table of my plugboard. */
+    private int[] _plugForward;
+    /** Inverse table of my plugboard. */
+    private int[] _plugInverse;
+    /** Characters whose plugboard entries setPlugboard(CharSequence, int,
+     *  int) changed from the identity, or null if _plugForward and
+     *  _plugInverse belong to a Permutation. */
+    private int[] _plugTouched;
+    /** Number of entries of _plugTouched in use, or more than its length
+     *  if the plugboard tables must be reset in full. */
+    private int _plugTouchedCount;
+    /** Plugboard table encipher applies on the way in: _plugForward, or
+     *  null if the plugboard is the identity. */
+    private int[] _plugIn;
+    /** Plugboard table encipher applies on the way out: _plugInverse, the
+     *  same array as _plugIn if the plugboard is an involution, or null if
+     *  it is the identity. */
+    private int[] _plugOut;
+    /** Largest number of entries in a stepping schedule. */
+    private static final long MAX_SCHEDULE = Integer.MAX_VALUE - 8;
+    /** Number of characters in each chunk of a parallel conversion. */
+    private static final int PARALLEL_CHUNK = 1 << 16;
+    /** Slots and settings of a machine with no rotors inserted. */
+    private static final int[] NO_ROTORS = new int[0];
 
 }
 
@@ -0,0 +1,264 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+/** The fixed description of a family of Enigma machines: an alphabet,
+ *  the number of rotor slots and pawls, and the wiring and notches of
+ *  every available rotor, compiled into tables.  A MachineSpec never
+ *  changes after it is built, so any number of Machines, on any number of
+ *  threads, may share one without locking; each Machine keeps its own
+ *  rotor choice, settings and plugboard.
+ *  @author Mohak Buch
+ */
+final class MachineSpec {
+
+    /** A spec for machines with alphabet ALPHA, 1 < NUMROTORS rotor
+     *  slots, and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are
+     *  ALLROTORS.  The rotors' current settings are ignored, and they are
+     *  never modified. */
+    MachineSpec(Alphabet alpha, int numRotors, int pawls,
+                Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, allRotors.toArray(new Rotor[0]));
+    }
+
+    /** A spec for machines with alphabet ALPHA, NUMROTORS slots and PAWLS
+     *  pawls, whose available rotors are ROTORS. */
+    private MachineSpec(Alphabet alpha, int numRotors, int pawls,
+                        Rotor[] rotors) {
+        this(alpha, numRotors, pawls,
+             Arrays.stream(rotors).map(Rotor::name).toArray(String[]::new),
+             flags(rotors, true), flags(rotors, false),
+             Arrays.stream(rotors).map(r -> r.permutation().forwardTable())
+             .toArray(int[][]::new),
+             Arrays.stream(rotors).map(Rotor::notches)
+             .toArray(boolean[][]::new));
+    }
+
+    /** A spec for machines with alphabet ALPHA, NUMROTORS slots and PAWLS
+     *  pawls, with one available rotor for each element of NAMES.  Rotor
+     *  R is named NAMES[R], is a reflector iff REFLECTING[R], can move iff
+     *  ROTATES[R], has the permutation table FORWARD[R], and has the notch
+     *  table NOTCHES[R] (null if none).  The arrays must not be modified
+     *  afterwards. */
+    MachineSpec(Alphabet alpha, int numRotors, int pawls, String[] names,
+                boolean[] reflecting, boolean[] rotates, int[][] forward,
+                boolean[][] notches) {
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _numPawls = pawls;
+        int count = names.length;
+        _names = names;
+        _reflecting = reflecting;
+        _rotates = rotates;
+        _forward = forward;
+        _inverse = new int[count][];
+        _notches = notches;
+        _notchPrefix = new int[count][];
+        _openPositions = new int[count][];
+        _seekable = new boolean[count];
+        _upperIndex = new HashMap<>();
+        for (int r = 0; r < count; r += 1) {
+            _inverse[r] = inverseOf(forward[r]);
+            compileNotches(r);
+            _upperIndex.put(names[r].toUpperCase(), r);
+        }
+        _index = new HashMap<>();
+        for (String name : names) {
+            _index.put(name, _upperIndex.get(name.toUpperCase()));
+        }
+    }
+
+    /** Returns the inverse table of the permutation table FORWARD: FORWARD
+     *  itself if it is an involution, as a reflector's wiring always is,
+     *  so that both directions share one table, and a new table
+     *  otherwise. */
+    private static int[] inverseOf(int[] forward) {
+        int x;
+        for (x = 0; x < forward.length && forward[forward[x]] == x; x += 1) {
+            continue;
+        }
+        if (x == forward.length) {
+            return forward;
+        }
+        int[] inverse = new int[forward.length];
+        for (x = 0; x < forward.length; x += 1) {
+            inverse[forward[x]] = x;
+        }
+        return inverse;
+    }
+
+    /** Returns an array whose element R is true iff ROTORS[R] is a
+     *  reflector, if REFLECTING, or can move, if not. */
+    private static boolean[] flags(Rotor[] rotors, boolean reflecting) {
+        boolean[] result = new boolean[rotors.length];
+        for (int r = 0; r < rotors.length; r += 1) {
+            result[r] = reflecting ? rotors[r].reflecting()
+                : rotors[r].rotates();
+        }
+        return result;
+    }
+
+    /** Precompute, for rotor R, the cumulative notch counts and the
+     *  positions that are not notches, which Machine.advance(long) uses to
+     *  count keystrokes arithmetically.  That counting assumes no moving
+     *  rotor has notches at two consecutive positions. */
+    private void compileNotches(int r) {
+        int n = _alphabet.size();
+        boolean[] notch = _notches[r];
+        _seekable[r] = true;
+        if (notch == null) {
+            return;
+        }
+        int[] prefix = new int[n + 1];
+        for (int x = 0; x < n; x++) {
+            prefix[x + 1] = prefix[x] + (notch[x] ? 1 : 0);
+            if (notch[x] && notch[(x + 1) % n] && _rotates[r]) {
+                _seekable[r] = false;
+            }
+        }
+        int[] open = new int[n - prefix[n]];
+        for (int x = 0, j = 0; x < n; x++) {
+            if (!notch[x]) {
+                open[j++] = x;
+            }
+        }
+        _notchPrefix[r] = prefix;
+        _openPositions[r] = open;
+    }
+
+    /** Returns my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Returns the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Returns the number of pawls. */
+    int numPawls() {
+        return _numPawls;
+    }
+
+    /** Returns the number of available rotors. */
+    int numAvailable() {
+        return _names.length;
+    }
+
+    /** Returns the number of the available rotor named NAME, ignoring
+     *  case, or -1 if there is none.  Rotors are numbered from 0 in the
+     *  order given to my constructor; of several with the same name, the
+     *  last counts. */
+    int rotorIndex(String name) {
+        Integer r = _index.get(name);
+        if (r == null) {
+            r = _upperIndex.get(name.toUpperCase());
+        }
+        return r == null ? -1 : r;
+    }
+
+    /** Returns the name of rotor R. */
+    String name(int r) {
+        return _names[r];
+    }
+
+    /** Returns true iff rotor R is a reflector. */
+    boolean reflecting(int r) {
+        return _reflecting[r];
+    }
+
+    /** Returns true iff rotor R has a ratchet and can move. */
+    boolean rotates(int r) {
+        return _rotates[r];
+    }
+
+    /** Returns the forward table of rotor R's permutation.  Callers must
+     *  not modify the result. */
+    int[] forward(int r) {
+        return _forward[r];
+    }
+
+    /** Returns the inverse table of rotor R's permutation, which is its
+     *  forward table if that is an involution.  Callers must not modify
+     *  the result. */
+    int[] inverse(int r) {
+        return _inverse[r];
+    }
+
+    /** Returns rotor R's notch table, indexed by setting, or null if it has
+     *  no notches.  Callers must not modify the result. */
+    boolean[] notches(int r) {
+        return _notches[r];
+    }
+
+    /** Returns a table whose entry P is the number of rotor R's notches at
+     *  settings below P, or null if it has no notches.  Callers must not
+     *  modify the result. */
+    int[] notchPrefix(int r) {
+        return _notchPrefix[r];
+    }
+
+    /** Returns the settings of rotor R that are not notches, in increasing
+     *  order, or null if it has no notches.  Callers must not modify the
+     *  result. */
+    int[] openPositions(int r) {
+        return _openPositions[r];
+    }
+
+    /** Returns true unless rotor R moves and has notches at two
+     *  consecutive settings. */
+    boolean seekable(int r) {
+        return _seekable[r];
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _numPawls;
+
+    /** Names of the available rotors. */
+    private final String[] _names;
+
+    /** _reflecting[R] is true iff rotor R is a reflector. */
+    private final boolean[] _reflecting;
+
+    /** _rotates[R] is true iff rotor R can move. */
+    private final boolean[] _rotates;
+
+    /** _forward[R] is the forward table of rotor R's permutation. */
+    private final int[][] _forward;
+
+    /** _inverse[R] is the inverse table of rotor R's permutation. */
+    private final int[][] _inverse;
+
+    /** _notches[R] is the notch table of rotor R (null if it has none). */
+    private final boolean[][] _notches;
+
+    /** _notchPrefix[R][P] is the number of notches of rotor R at settings
+     *  below P (null if it has no notches). */
+    private final int[][] _notchPrefix;
+
+    /** _openPositions[R] lists the settings of rotor R that are not
+     *  notches, in increasing order. */
+    private final int[][] _openPositions;
+
+    /** _seekable[R] is false iff rotor R moves and has adjacent
+     *  notches. */
+    private final boolean[] _seekable;
+
+    /** Rotor numbers, indexed by rotor name as given, so that names
+     *  spelled as in the configuration are found without case
+     *  conversion. */
+    private final HashMap<String, Integer> _index;
+
+    /** Rotor numbers, indexed by upper-case rotor name. */
+    private final HashMap<String, Integer> _upperIndex;
+
+}
@@ -0,0 +1,448 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author MohakBuch
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Most bytes a test of allocation-free code may see allocated, for
+     *  the measurement itself, whatever the number of calls. */
+    private static final long MAX_STRAY_ALLOCATION = 1024;
+
+    /** Notches of the naval moving rotors. */
+    private static final HashMap<String, String> NOTCHES = new HashMap<>();
+    static {
+        NOTCHES.put("I", "Q");
+        NOTCHES.put("II", "E");
+        NOTCHES.put("III", "V");
+        NOTCHES.put("IV", "J");
+        NOTCHES.put("V", "Z");
+        NOTCHES.put("VI", "ZM");
+        NOTCHES.put("VII", "ZM");
+        NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return a 5-slot, 3-pawl machine holding all the naval rotors. */
+    static Machine navalMachine() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : NAVALA.keySet()) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (NOTCHES.containsKey(name)) {
+                rotors.add(new MovingRotor(name, perm, NOTCHES.get(name)));
+            } else if (name.equals("B") || name.equals("C")) {
+                rotors.add(new Reflector(name, perm));
+            } else {
+                rotors.add(new FixedRotor(name, perm));
+            }
+        }
+        return new Machine(UPPER, 5, 3, rotors);
+    }
+
+    /** Return navalMachine() set up with ROTORS, SETTING and PLUGBOARD. */
+    static Machine navalMachine(String rotors, String setting,
+                                String plugboard) {
+        Machine mach = navalMachine();
+        mach.insertRotors(rotors.split(" "));
+        mach.setRotors(setting);
+        mach.setPlugboard(new Permutation(plugboard, UPPER));
+        return mach;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkConvertMessage() {
+        Machine mach = navalMachine("B Beta III IV I", "AXLE",
+                                    "(HQ) (EX) (IP) (TR) (BY)");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     mach.convert("FROM HIS SHOULDER HIAWATHA"));
+    }
+
+    @Test
+    public void checkDoubleStep() {
+        Machine mach = navalMachine("B Beta I II III", "AAEU", "");
+        Machine ref = navalMachine("B Beta I II III", "ABGX", "");
+        mach.convert("AAA");
+        assertEquals(ref.convert("QWERTY"), mach.convert("QWERTY"));
+    }
+
+    @Test
+    public void checkBulkConvert() {
+        String msg = "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF ROSEWOOD";
+        Machine mach = navalMachine("B Beta III IV I", "AXLE",
+                                    "(HQ) (EX) (IP) (TR) (BY)");
+        Machine ref = navalMachine("B Beta III IV I", "AXLE",
+                                   "(HQ) (EX) (IP) (TR) (BY)");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < msg.length(); i += 1) {
+            if (msg.charAt(i) != ' ') {
+                expected.append(UPPER.toChar(
+                    ref.convert(UPPER.toInt(msg.charAt(i)))));
+            }
+        }
+        char[] out = new char[msg.length() + 2];
+        int len = mach.convert(msg.toCharArray(), 0, 20, out, 2);
+        len += mach.convert(msg.toCharArray(), 20, msg.length() - 20,
+                            out, 2 + len);
+        assertEquals(expected.toString(), new String(out, 2, len));
+
+        mach = navalMachine("B Beta III IV I", "AXLE",
+                            "(HQ) (EX) (IP) (TR) (BY)");
+        CharBuffer in = CharBuffer.wrap(msg);
+        CharBuffer dest = CharBuffer.allocate(msg.length());
+        assertEquals(expected.length(), mach.convert(in, dest));
+        assertFalse(in.hasRemaining());
+        dest.flip();
+        assertEquals(expected.toString(), dest.toString());
+    }
+
+    @Test
+    public void checkLookupTableEngine() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 20000; i += 1) {
+            msg.append(UPPER_STRING.charAt((i * 7 + i / 26) % 26));
+        }
+        Machine ref = navalMachine("B Beta III IV I", "AXLE", "(HQ) (EX)");
+        Machine mach = navalMachine("B Beta III IV I", "AXLE", "(HQ) (EX)");
+        mach.setTableBudget(1 << 23);
+        Machine small = navalMachine("B Beta III IV I", "AXLE", "(HQ) (EX)");
+        small.setTableBudget(1 << 10);
+        String expected = ref.convert(msg.toString());
+        assertEquals(expected, mach.convert(msg.toString()));
+        assertEquals(expected, small.convert(msg.toString()));
+        assertEquals(ref.convert("ABCDEFG"), mach.convert("ABCDEFG"));
+        mach.setRotors("BQEV");
+        ref.setRotors("BQEV");
+        assertEquals(ref.convert("ABCDEFG"), mach.convert("ABCDEFG"));
+    }
+
+    @Test
+    public void checkAdvance() {
+        String[] orders = { "B Beta III IV I", "C Gamma VI VII VIII",
+                            "B Beta V VIII II" };
+        String[] settings = { "AXLE", "AAEU", "AZMZ", "QDVJ", "ALYM" };
+        long[] counts = { 0, 1, 2, 25, 26, 27, 650, 677, 5000, 16913 };
+        for (String order : orders) {
+            for (String setting : settings) {
+                for (long count : counts) {
+                    Machine mach = navalMachine(order, setting, "");
+                    Machine ref = navalMachine(order, setting, "");
+                    for (long i = 0; i < count; i += 1) {
+                        ref.convert(0);
+                    }
+                    String state = mach.stateAt(count);
+                    mach.advance(count);
+                    assertEquals(order + " " + setting + " +" + count,
+                                 ref.stateAt(0), state);
+                    assertEquals(ref.convert("HIAWATHA"),
+                                 mach.convert("HIAWATHA"));
+                }
+            }
+        }
+        Machine mach = navalMachine("C Gamma VI VII VIII", "AZMZ", "");
+        mach.advance(123456789L);
+        mach.advance(987654321000L);
+        assertEquals(mach.stateAt(0),
+                     navalMachine("C Gamma VI VII VIII", "AZMZ", "")
+                     .stateAt(987777777789L));
+    }
+
+    @Test
+    public void checkConvertParallel() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 400000; i += 1) {
+            int k = (i * 31 + i / 97) % 29;
+            msg.append(k < 26 ? UPPER_STRING.charAt(k) : ' ');
+        }
+        Machine ref = navalMachine("B Beta III IV I", "AXLE", "(HQ) (EX)");
+        Machine mach = navalMachine("B Beta III IV I", "AXLE", "(HQ) (EX)");
+        assertEquals(ref.convert(msg.toString()),
+                     mach.convertParallel(msg.toString()));
+        assertEquals(ref.convert("HIAWATHA"), mach.convert("HIAWATHA"));
+        mach.setTableBudget(1 << 23);
+        ref.setTableBudget(1 << 23);
+        assertEquals(ref.convert(msg.toString()),
+                     mach.convertParallel(msg.toString()));
+        assertEquals(ref.stateAt(0), mach.stateAt(0));
+    }
+
+    /** Returns a three-rotor machine at SETTING whose rotors have notches
+     *  at consecutive settings, so that it cannot seek arithmetically. */
+    static Machine doubleNotchMachine(String setting) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B",
+                                 new Permutation(NAVALA.get("B"), UPPER)));
+        String[] names = { "I", "II", "III" }, notches = { "QR", "EF", "VW" };
+        for (int i = 0; i < names.length; i += 1) {
+            Permutation perm = new Permutation(NAVALA.get(names[i]), UPPER);
+            rotors.add(new MovingRotor(names[i], perm, notches[i]));
+        }
+        Machine mach = new Machine(UPPER, 4, 3, rotors);
+        mach.insertRotors("B I II III".split(" "));
+        mach.setRotors(setting);
+        return mach;
+    }
+
+    @Test
+    public void checkPeriod() {
+        Machine mach = navalMachine("B Beta III IV I", "AXLE", "");
+        assertEquals(26 * 25 * 26, mach.period());
+        mach.setScheduleBudget(1 << 20);
+        assertEquals(26 * 25 * 26, mach.period());
+        for (String setting : new String[] { "AEA", "ZDV", "MQRA" }) {
+            Machine plain = setting.length() == 3 ? doubleNotchMachine(setting)
+                : navalMachine("C Gamma VI VII VIII", setting, "");
+            Machine sched = setting.length() == 3 ? doubleNotchMachine(setting)
+                : navalMachine("C Gamma VI VII VIII", setting, "");
+            sched.setScheduleBudget(1 << 20);
+            long period = plain.period();
+            assertEquals(period, sched.period());
+            assertTrue(period > 0 && period <= 26 * 26 * 26);
+            assertEquals(sched.stateAt(period), sched.stateAt(2 * period));
+            assertEquals(plain.stateAt(period + 7),
+                         sched.stateAt(2 * period + 7));
+        }
+        Machine small = navalMachine("B Beta III IV I", "AXLE", "");
+        small.setScheduleBudget(1 << 10);
+        assertEquals(26 * 25 * 26, small.period());
+    }
+
+    @Test
+    public void checkSchedule() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 200000; i += 1) {
+            int k = (i * 31 + i / 97) % 29;
+            msg.append(k < 26 ? UPPER_STRING.charAt(k) : ' ');
+        }
+        for (String setting : new String[] { "AEA", "QEV", "ZZZ" }) {
+            Machine ref = doubleNotchMachine(setting);
+            Machine mach = doubleNotchMachine(setting);
+            mach.setScheduleBudget(1 << 20);
+            assertEquals(ref.convert(msg.toString()),
+                         mach.convertParallel(msg.toString()));
+            assertEquals(ref.stateAt(0), mach.stateAt(0));
+            assertEquals(ref.stateAt(12345), mach.stateAt(12345));
+            ref.advance(54321);
+            mach.advance(54321);
+            assertEquals(ref.convert("HIAWATHA"), mach.convert("HIAWATHA"));
+            mach.setTableBudget(1 << 23);
+            ref.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+            mach.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+            assertEquals(ref.convert(msg.toString()),
+                         mach.convert(msg.toString()));
+            assertEquals(ref.convert(7), mach.convert(7));
+            mach.setRotors("AAA");
+            ref.setRotors("AAA");
+            assertEquals(ref.convert("HIAWATHA"), mach.convert("HIAWATHA"));
+        }
+    }
+
+    @Test
+    public void checkSetRotorsIndices() {
+        Machine mach = navalMachine("B Beta III IV I", "AAAA", "");
+        mach.setRotors(new int[] { 0, 23, 11, 4 });
+        assertEquals("AXLE", mach.stateAt(0));
+        try {
+            mach.setRotors(new int[] { 0, 23, 11, 4, 0 });
+            fail("accepted too many settings");
+        } catch (EnigmaException excp) {
+            assertEquals("expected 4 rotor settings, got 5",
+                         excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkRotorIndex() {
+        MachineSpec spec = navalMachine().spec();
+        int beta = spec.rotorIndex("Beta");
+        assertEquals("Beta", spec.name(beta));
+        assertEquals(beta, spec.rotorIndex("BETA"));
+        assertEquals(beta, spec.rotorIndex("beta"));
+        assertEquals(-1, spec.rotorIndex("Delta"));
+    }
+
+    @Test
+    public void checkNoRotors() {
+        Machine mach = new Machine(navalMachine().spec());
+        mach.setTableBudget(1 << 23);
+        try {
+            mach.convert("HELLO");
+            fail("converted with no rotors");
+        } catch (EnigmaException excp) {
+            assertEquals("no rotors inserted", excp.getMessage());
+        }
+        mach = navalMachine("B Beta III IV I", "AXLE", "");
+        mach.convert("HELLO");
+        mach.fixRotors();
+        try {
+            mach.convert(0);
+            fail("converted after rotors were removed");
+        } catch (EnigmaException excp) {
+            assertEquals("no rotors inserted", excp.getMessage());
+        }
+        mach.insertRotors("B Beta III IV I".split(" "));
+        mach.setRotors("AXLE");
+        assertEquals(navalMachine("B Beta III IV I", "AXLE", "")
+                     .convert("HELLO"), mach.convert("HELLO"));
+    }
+
+    @Test
+    public void checkSharedSpec() {
+        MachineSpec spec = navalMachine().spec();
+        Machine[] sessions = new Machine[3];
+        String[] settings = { "AXLE", "AAEU", "ZZZZ" };
+        for (int i = 0; i < sessions.length; i += 1) {
+            sessions[i] = new Machine(spec);
+            sessions[i].insertRotors("B Beta III IV I".split(" "));
+            sessions[i].setRotors(settings[i]);
+            sessions[i].setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+        }
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        StringBuilder[] results = new StringBuilder[sessions.length];
+        for (int i = 0; i < sessions.length; i += 1) {
+            results[i] = new StringBuilder();
+        }
+        for (int k = 0; k < msg.length(); k += 1) {
+            for (int i = 0; i < sessions.length; i += 1) {
+                int c = UPPER.toInt(msg.charAt(k));
+                results[i].append(UPPER.toChar(sessions[i].convert(c)));
+            }
+        }
+        for (int i = 0; i < sessions.length; i += 1) {
+            Machine ref = navalMachine("B Beta III IV I", settings[i],
+                                       "(HQ) (EX)");
+            assertEquals(ref.convert(msg), results[i].toString());
+        }
+    }
+
+    @Test
+    public void checkPlugboardKinds() {
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        String[] boards = { "(HQ) (EX) (IP)", "(HQE) (XIP)", "", "(H)",
+                            "(HQ) (EX) (IP)" };
+        Machine mach = navalMachine("B Beta III IV I", "AXLE", "");
+        assertSame(mach.spec().forward(mach.spec().rotorIndex("B")),
+                   mach.spec().inverse(mach.spec().rotorIndex("B")));
+        for (String board : boards) {
+            mach.setRotors("AXLE");
+            mach.setPlugboard(board, 0, board.length());
+            Machine ref = navalMachine("B Beta III IV I", "AXLE", board);
+            assertEquals(board, ref.convert(msg), mach.convert(msg));
+        }
+        Machine unplugged = new Machine(mach.spec());
+        unplugged.insertRotors("B Beta III IV I".split(" "));
+        unplugged.setRotors("AXLE");
+        assertEquals(navalMachine("B Beta III IV I", "AXLE", "").convert(msg),
+                     unplugged.convert(msg));
+    }
+
+    @Test
+    public void checkRingSettings() {
+        Machine mach = navalMachine();
+        Main.setUp(mach, "* B Beta I II III AAAA ABBB");
+        assertEquals("EWTYX", mach.convert("AAAAA"));
+        Main.setUp(mach, "* B Beta I II III AAAA ABBB (AE)");
+        assertEquals("EWTYX", mach.convert("EEEEE").replace('A', 'E'));
+        Main.setUp(mach, "* B Beta I II III AAAA");
+        assertEquals("BDZGO", mach.convert("AAAAA"));
+        Machine ref = navalMachine("B Beta I II III", "AAAA", "");
+        mach.setRotors("AAAA", "AAAA");
+        mach.setPlugboard("", 0, 0);
+        assertEquals(ref.convert("AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA"),
+                     mach.convert("AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA"));
+        Machine shifted = navalMachine();
+        shifted.insertRotors("B Beta I II III".split(" "));
+        shifted.setRotors("AQEU", "CXYZ");
+        mach.setRotors("AQEU", "CXYZ");
+        mach.setTableBudget(1 << 26);
+        String msg = "HELLO WORLD AAAAAAAAAA AAAAAAAAAA AAAAAAAAAA";
+        assertEquals(shifted.convert(msg), mach.convert(msg));
+    }
+
+    @Test
+    public void checkBadRingSettings() {
+        Machine mach = navalMachine("B Beta I II III", "AAAA", "");
+        try {
+            mach.setRotors("AQ?U", "CXYZ");
+            fail("accepted a setting not in the alphabet");
+        } catch (EnigmaException excp) {
+            assertEquals("setting ? not in alphabet", excp.getMessage());
+        }
+        try {
+            mach.setRotors("AQEU", "CX?Z");
+            fail("accepted a ring setting not in the alphabet");
+        } catch (EnigmaException excp) {
+            assertEquals("ring setting ? not in alphabet", excp.getMessage());
+        }
+        mach.setRotors("AQ?U");
+        assertEquals("AQZU", mach.stateAt(0));
+    }
+
+    @Test
+    public void checkPlugboardAfterBadSettings() {
+        Machine mach = navalMachine("B Beta III IV I", "AXLE", "");
+        mach.setPlugboard("(HQ) (EX) (IP)", 0, 14);
+        try {
+            mach.setPlugboard("(AB) (CD) (AZ)", 0, 14);
+            fail("accepted duplicate plugboard character");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        mach.setPlugboard("(HQ) (EX) (IP) (TR) (BY)", 0, 24);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     mach.convert("FROM HIS SHOULDER HIAWATHA"));
+    }
+
+    @Test
+    public void checkPlugboardFromSettingsText() {
+        Machine mach = navalMachine("B Beta III IV I", "AXLE", "(YF) (ZH)");
+        String line = "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+        mach.setPlugboard(line, line.indexOf("(TR)"), line.length());
+        mach.setPlugboard(line, line.indexOf('('), line.length());
+        mach.setRotors("AXLE");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     mach.convert("FROM HIS SHOULDER HIAWATHA"));
+        Machine ref = navalMachine("B Beta III IV I", "AXLE", "");
+        mach.setPlugboard(line, 0, 0);
+        mach.setRotors("AXLE");
+        assertEquals(ref.convert("HIAWATHA"), mach.convert("HIAWATHA"));
+    }
+
+    @Test
+    public void checkConvertAllocatesNothing() {
+        Machine mach = navalMachine("B Beta III IV I", "AXLE", "(YF) (ZH)");
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        final int count = 200000;
+        int c = 0;
+        for (int i = 0; i < count; i += 1) {
+            c = mach.convert(c);
+        }
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < count; i += 1) {
+            c = mach.convert(c);
+        }
+        long allocated = threads.getThreadAllocatedBytes(id) - before;
+        assertTrue("convert(int) allocated " + allocated + " bytes",
+                   allocated < MAX_STRAY_ALLOCATION);
+    }
+
+}
@@ -1,10 +1,29 @@
 package enigma;
+import java.io.CharArrayWriter;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Scanner;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import static enigma.EnigmaException.*;
 
 /** Enigma simulator.
@@ -20,7 +39,17 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  The file names may be preceded by the option --parallel[=N], which
+     *  converts the blocks of messages that follow each settings line
+     *  concurrently on N threads (by default, one per processor).  The
+     *  output is the same as without it.
+     *
+     *  Message lines are converted a buffer at a time, in constant
+     *  memory.  A line containing '*' is printed as an empty line, but
+     *  in a line longer than LineReader.BUFFER_SIZE characters, a '*'
+     *  after the first buffer is an error. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -33,22 +62,47 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int first = 0;
+        while (first < args.length && args[first].startsWith("--")) {
+            setOption(args[first]);
+            first += 1;
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
         _config = getInput(args[0]);
+        _configPath = Paths.get(args[0]);
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = getReader(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new LineReader(new InputStreamReader(System.in));
         }
 
         if (args.length > 2) {
-            _output = getOutput(args[2]);
+            _outputFile = getOutput(args[2]);
+        } else {
+            _output = new GroupedWriter(new OutputStreamWriter(System.out));
+        }
+    }
+
+    /** Apply the command-line option OPTION (see comment on main). */
+    private void setOption(String option) {
+        if (option.equals("--parallel")) {
+            _threads = Runtime.getRuntime().availableProcessors();
+        } else if (option.startsWith("--parallel=")) {
+            try {
+                _threads = Integer.parseInt(option.substring(11));
+            } catch (NumberFormatException excp) {
+                _threads = 0;
+            }
+            if (_threads <= 0) {
+                throw error("bad thread count in %s", option);
+            }
         } else {
-            _output = System.out;
+            throw error("unknown option %s", option);
         }
     }
 
@@ -61,61 +115,480 @@ public final class Main {
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return a LineReader reading from the file named NAME.  Regular
+     *  files in an ASCII-compatible charset are memory-mapped; pipes and
+     *  other special files, whose size is not known, are read as
+     *  streams. */
+    private LineReader getReader(String name) {
         try {
-            return new PrintStream(new File(name));
-        } catch (IOException excp) {
+            Path path = Paths.get(name);
+            FileChannel file = FileChannel.open(path);
+            Charset charset = Charset.defaultCharset();
+            Reader reader;
+            if (MappedFileReader.isAsciiCompatible(charset)
+                && Files.isRegularFile(path)) {
+                reader = new MappedFileReader(file, charset);
+            } else {
+                reader = new InputStreamReader(Channels.newInputStream(file),
+                                               charset);
+            }
+            return new LineReader(reader);
+        } catch (IOException | InvalidPathException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /** Return a channel writing to the file named NAME, which is created
+     *  or emptied. */
+    private FileChannel getOutput(String name) {
+        try {
+            return FileChannel.open(Paths.get(name),
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                    StandardOpenOption.WRITE);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Set _output to write to _outputFile.  When both the alphabet and
+     *  the default charset are ASCII, everything printed is ASCII and is
+     *  narrowed straight into the file's buffer; otherwise it is encoded
+     *  in the default charset. */
+    private void openOutput() {
+        Charset charset = Charset.defaultCharset();
+        if (_alphabet.isAscii()
+            && MappedFileReader.isAsciiCompatible(charset)) {
+            _output = new GroupedWriter(new ChannelWriter(_outputFile));
+        } else {
+            _output = new GroupedWriter(Channels.newWriter(_outputFile,
+                                                           charset));
+        }
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
 
-    private void process() {
-        Machine M = readConfig();
-        String temp;
-        if (_input.hasNextLine()) {
-            String setting = _input.next();
-            if (setting.charAt(0) == '*') {
-                temp = setting + _input.nextLine();
-                setUp(M, temp);
+    void process() {
+        try {
+            Machine M = readConfig();
+            if (_outputFile != null) {
+                openOutput();
+            }
+            if (_threads > 0) {
+                processParallel(M);
             } else {
-                throw new EnigmaException("No setting found");
+                processMessages(M);
             }
+        } finally {
+            closeOutput();
         }
+    }
 
-        while (_input.hasNextLine()) {
-
-            temp = _input.nextLine();
-            while (temp.equals("") && _input.hasNextLine()) {
-                _output.println();
-                temp = _input.nextLine();
+    /** Apply M to the messages in _input, sending the results to
+     *  _output. */
+    private void processMessages(Machine M) {
+        char[] buf = new char[LineReader.BUFFER_SIZE];
+        if (_input.skipWhitespace()) {
+            if (_input.read(buf, 0, 1) == 1 && buf[0] == '*') {
+                setUp(M, readRestOfLine(buf, 1));
+            } else {
+                throw new EnigmaException("No setting found");
             }
-            if (_input.hasNext() && temp.charAt(0) == '*') {
-                M.fixRotors();
-                setUp(M, temp);
+        }
 
-            } else {
-                if (temp.contains("*")) {
+        while (_input.nextLine()) {
+            int len = _input.read(buf, 0, buf.length);
+            if (len < 0) {
+                _output.endLine();
+            } else if (buf[0] == '*') {
+                String settings = readRestOfLine(buf, len);
+                if (_input.hasToken()) {
+                    M.fixRotors();
+                    setUp(M, settings);
+                } else {
                     printMessageLine("");
+                }
+            } else {
+                printMessage(M, buf, len);
+            }
+        }
+    }
+
+    /** Apply M to the messages in _input, sending the results to _output,
+     *  as processMessages does, but converting the blocks of messages
+     *  following each settings line in batches on _threads threads.
+     *  Message lines are added to batches a buffer at a time, and a batch
+     *  is cut off once it holds BATCH_SIZE characters, even in the middle
+     *  of a block or of a line, so memory use does not depend on the
+     *  length of either.  The results of the batches pass through a
+     *  bounded reorder buffer, so that they are written in input order.
+     *  An error is reported only after all the output that precedes it
+     *  in serial processing. */
+    private void processParallel(Machine M) {
+        ExecutorService workers = Executors.newFixedThreadPool(_threads,
+            task -> {
+                Thread thread = new Thread(task, "enigma-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        ArrayDeque<Future<Batch>> pending = new ArrayDeque<>();
+        try {
+            char[] buf = new char[LineReader.BUFFER_SIZE];
+            Machine tracker = new Machine(M.spec());
+            Batch batch = new Batch(M.spec());
+            if (_input.skipWhitespace()) {
+                if (_input.read(buf, 0, 1) == 1 && buf[0] == '*') {
+                    batch.addSettings(readRestOfLine(buf, 1));
                 } else {
-                    String con = M.convert(temp);
-                    printMessageLine(con);
+                    throw new EnigmaException("No setting found");
                 }
             }
+            while (_input.nextLine()) {
+                int len = _input.read(buf, 0, buf.length);
+                if (len > 0 && buf[0] == '*') {
+                    String line = readRestOfLine(buf, len);
+                    if (_input.hasToken()) {
+                        batch.addSettings(line);
+                    } else {
+                        batch.add(buf, 0, false, true);
+                    }
+                } else if (len < 0 || contains(buf, len, '*')) {
+                    batch.add(buf, 0, false, true);
+                } else {
+                    boolean continued = false;
+                    while (len > 0) {
+                        char[] piece = Arrays.copyOf(buf, len);
+                        len = _input.read(buf, 0, buf.length);
+                        batch.add(piece, piece.length, continued, len <= 0);
+                        continued = true;
+                        batch = cut(batch, tracker, workers, pending);
+                    }
+                }
+                batch = cut(batch, tracker, workers, pending);
+            }
+            submit(workers, batch, pending);
+            while (!pending.isEmpty()) {
+                writeBatch(pending);
+            }
+        } catch (RuntimeException excp) {
+            while (!pending.isEmpty()) {
+                writeBatch(pending);
+            }
+            throw excp;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /** If BATCH holds at least BATCH_SIZE characters, submit it to
+     *  WORKERS as for submit and return the batch that continues it, its
+     *  machine set up by way of TRACKER as for Batch.next.  Otherwise,
+     *  return BATCH. */
+    private Batch cut(Batch batch, Machine tracker, ExecutorService workers,
+                      ArrayDeque<Future<Batch>> pending) {
+        if (batch.size() < BATCH_SIZE) {
+            return batch;
+        }
+        Batch next = batch.next(tracker);
+        submit(workers, batch, pending);
+        return next;
+    }
+
+    /** Start converting BATCH on WORKERS, adding it to the end of
+     *  PENDING.  If that fills the reorder buffer, first write out the
+     *  batch at its head. */
+    private void submit(ExecutorService workers, Batch batch,
+                        ArrayDeque<Future<Batch>> pending) {
+        if (pending.size() >= MAX_PENDING * _threads) {
+            writeBatch(pending);
+        }
+        pending.add(workers.submit(batch));
+    }
+
+    /** Remove the batch at the head of PENDING, wait for it to be
+     *  converted and write its output.  If its conversion stopped at an
+     *  exception, discard the rest of PENDING and throw the exception. */
+    private void writeBatch(ArrayDeque<Future<Batch>> pending) {
+        Batch batch;
+        try {
+            batch = pending.remove().get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            throw new RuntimeException(excp.getCause());
+        }
+        char[] output = batch.output();
+        _output.writeVerbatim(output, 0, output.length);
+        if (batch.error() != null) {
+            pending.clear();
+            throw batch.error();
+        }
+    }
+
+    /** A run of settings lines and pieces of message lines, converted as
+     *  a unit with a machine of its own.  A batch either starts with a
+     *  settings line or continues the block of messages, and perhaps the
+     *  line, at the end of the batch before it. */
+    private static final class Batch implements Callable<Batch> {
+
+        /** An empty batch for machines described by SPEC, starting
+         *  outside any block. */
+        Batch(MachineSpec spec) {
+            _spec = spec;
+        }
+
+        /** Add the settings line LINE, which starts a new block. */
+        void addSettings(String line) {
+            _setups.set(_pieces.size());
+            _pieces.add(line.toCharArray());
+            _size += line.length() + 1;
+            _settings = line;
+            _newBlock = true;
+            _converted = 0;
+            _lineLength = 0;
+        }
+
+        /** Add the first LEN characters of PIECE as part of a message
+         *  line: the start of one unless CONTINUED, and its end if ENDS.
+         *  PIECE is copied unless its length is LEN. */
+        void add(char[] piece, int len, boolean continued, boolean ends) {
+            int k = _pieces.size();
+            _continued.set(k, continued);
+            _ends.set(k, ends);
+            _pieces.add(piece.length == len ? piece
+                        : Arrays.copyOf(piece, len));
+            _size += len + (ends ? 1 : 0);
+            long converted = _converted;
+            for (int i = 0; i < len; i += 1) {
+                _converted += piece[i] != ' ' ? 1 : 0;
+            }
+            _lineLength = ends ? 0
+                : (continued ? _lineLength : 0) + _converted - converted;
+        }
+
+        /** Returns the total length of my pieces, counting line ends. */
+        int size() {
+            return _size;
+        }
+
+        /** Returns an empty batch that continues the block I end in, and
+         *  the message line if I end in the middle of one, starting with
+         *  the rotor settings my machine will end with.
+         *  Those are found by setting up TRACKER, which must be left as
+         *  the last call of next left it, for my block (if I start it)
+         *  and advancing it over the characters I convert, without
+         *  converting them.  If that fails, so will my own conversion, and
+         *  the batch returned is never written. */
+        Batch next(Machine tracker) {
+            Batch next = new Batch(_spec);
+            next._startSettings = next._settings = _settings;
+            next._startLine = next._lineLength = _lineLength;
+            if (_settings != null && (_newBlock || _startRotors != null)) {
+                try {
+                    if (_newBlock) {
+                        tracker.fixRotors();
+                        setUp(tracker, _settings);
+                    }
+                    tracker.advance(_converted);
+                    next._startRotors = tracker.settings();
+                } catch (RuntimeException excp) {
+                    next._startRotors = null;
+                }
+            }
+            return next;
+        }
+
+        /** Convert my pieces, recording the output and the exception, if
+         *  any, at which conversion stopped.  Returns this batch. */
+        @Override
+        public Batch call() {
+            CharArrayWriter text = new CharArrayWriter();
+            GroupedWriter out = new GroupedWriter(text);
+            Machine M = new Machine(_spec);
+            try {
+                if (_startSettings != null) {
+                    setUp(M, _startSettings);
+                    M.setRotors(_startRotors);
+                }
+                out.continueLine(_startLine);
+                for (int k = 0; k < _pieces.size(); k += 1) {
+                    char[] piece = _pieces.get(k);
+                    if (_setups.get(k)) {
+                        M.fixRotors();
+                        setUp(M, new String(piece));
+                    } else {
+                        printPiece(M, piece, _continued.get(k), out);
+                        if (_ends.get(k)) {
+                            out.endLine();
+                        }
+                    }
+                }
+            } catch (RuntimeException excp) {
+                _error = excp;
+            }
+            out.flush();
+            _pieces = null;
+            _output = text.toCharArray();
+            return this;
+        }
+
+        /** Convert PIECE with M and print the result to OUT.  A '*' in a
+         *  piece that CONTINUES a line is an error, as in
+         *  printMessage(Machine, char[], int). */
+        private static void printPiece(Machine M, char[] piece,
+                                       boolean continues, GroupedWriter out) {
+            if (continues && contains(piece, piece.length, '*')) {
+                throw EnigmaException.error(
+                    "'*' in the middle of a long message line");
+            }
+            if (piece.length > 0) {
+                out.write(piece, 0,
+                          M.convert(piece, 0, piece.length, piece, 0));
+            }
+        }
+
+        /** Returns my converted output. */
+        char[] output() {
+            return _output;
+        }
+
+        /** Returns the exception at which my conversion stopped, or null
+         *  if there was none. */
+        RuntimeException error() {
+            return _error;
+        }
+
+        /** Description of the machines used. */
+        private final MachineSpec _spec;
+
+        /** Settings lines and pieces of message lines. */
+        private ArrayList<char[]> _pieces = new ArrayList<>();
+
+        /** Bit K is set iff piece K is a settings line to apply. */
+        private final BitSet _setups = new BitSet();
+
+        /** Bit K is set iff piece K continues a message line. */
+        private final BitSet _continued = new BitSet();
+
+        /** Bit K is set iff piece K ends a message line. */
+        private final BitSet _ends = new BitSet();
+
+        /** Total length of my pieces, counting line ends. */
+        private int _size;
+
+        /** Settings line of the block I start in, or null if I start
+         *  outside any block. */
+        private String _startSettings;
+
+        /** Rotor settings, as for Machine.setRotors(int[]), at which I
+         *  start in the middle of the block set up by _startSettings. */
+        private int[] _startRotors;
+
+        /** Number of characters of the message line I start in the middle
+         *  of that were converted before me, or 0. */
+        private long _startLine;
+
+        /** Number of characters of the message line I end in the middle
+         *  of that are converted before my end, or 0. */
+        private long _lineLength;
+
+        /** Settings line of the block I end in, or null. */
+        private String _settings;
+
+        /** True iff I contain the settings line _settings. */
+        private boolean _newBlock;
 
+        /** Number of characters I convert after _settings (if I contain
+         *  it) or from my start. */
+        private long _converted;
+
+        /** Converted output. */
+        private char[] _output;
+
+        /** Exception at which conversion stopped, or null. */
+        private RuntimeException _error;
+    }
+
+    /** Flush _output, closing it if it writes to a file. */
+    private void closeOutput() {
+        if (_outputFile == null) {
+            _output.flush();
+        } else if (_output != null) {
+            _output.close();
+        } else {
+            try {
+                _outputFile.close();
+            } catch (IOException excp) {
+                throw error("could not write output: %s", excp.getMessage());
+            }
         }
+    }
 
+    /** Return the characters of the current input line, starting with
+     *  the LEN already read into BUF and continuing with those not yet
+     *  read.  BUF is used as scratch space. */
+    private String readRestOfLine(char[] buf, int len) {
+        StringBuilder line = new StringBuilder();
+        line.append(buf, 0, len);
+        for (len = _input.read(buf, 0, buf.length); len > 0;
+             len = _input.read(buf, 0, buf.length)) {
+            line.append(buf, 0, len);
+        }
+        return line.toString();
+    }
 
+    /** Convert and print the current message line with M, whose first LEN
+     *  characters have been read into BUF, reading the rest of it a
+     *  buffer at a time.  A line containing '*' is printed as an empty
+     *  line without being converted; since that can only be known before
+     *  printing anything, a '*' after the first buffer is an error. */
+    private void printMessage(Machine M, char[] buf, int len) {
+        if (contains(buf, len, '*')) {
+            printMessageLine("");
+            return;
+        }
+        while (len > 0) {
+            _output.write(buf, 0, M.convert(buf, 0, len, buf, 0));
+            len = _input.read(buf, 0, buf.length);
+            if (contains(buf, len, '*')) {
+                throw error("'*' in the middle of a long message line");
+            }
+        }
+        _output.endLine();
+    }
 
+    /** Returns true iff one of the first LEN characters of BUF is C. */
+    private static boolean contains(char[] buf, int len, char c) {
+        for (int i = 0; i < len; i++) {
+            if (buf[i] == c) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+     *  file _config, taken from its compiled cache when that is up to date,
+     *  and otherwise parsed and then cached. */
+    Machine readConfig() {
+        byte[] hash = ConfigCache.hash(_configPath);
+        Path cache = ConfigCache.cacheFor(_configPath);
+        MachineSpec spec = hash == null ? null : ConfigCache.load(cache, hash);
+        if (spec == null) {
+            spec = parseConfig();
+            if (hash != null) {
+                ConfigCache.store(cache, hash, spec);
+            }
+        }
+        _alphabet = spec.alphabet();
+        return new Machine(spec);
+    }
+
+    /** Return a MachineSpec parsed from the contents of _config. */
+    MachineSpec parseConfig() {
 
         int numRotors;
 
@@ -139,7 +612,8 @@ public final class Main {
                     _config.nextLine();
                 }
             }
-            return new Machine(_alphabet, numRotors, numPawls, allrotors);
+            return new MachineSpec(_alphabet, numRotors, numPawls,
+                                   allrotors);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
         }
@@ -148,7 +622,6 @@ public final class Main {
     /** Return a rotor, reading its description from _config. */
     private Rotor readRotor() {
         String name;
-        String cycle;
         String notch;
         String temp;
         char m;
@@ -159,13 +632,13 @@ public final class Main {
             temp = _config.next();
 
             m = temp.charAt(0);
-            cycle = "";
+            StringBuilder cycles = new StringBuilder();
             Permutation p;
             notch = temp.substring(1, temp.length());
             while (_config.hasNext("\\(.+\\)")) {
-                cycle += _config.next();
+                cycles.append(_config.next()).append(' ');
             }
-            p = new Permutation(cycle, _alphabet);
+            p = new Permutation(cycles.toString(), _alphabet);
             if (m == 'M') {
 
                 return new MovingRotor(name, p, notch);
@@ -187,83 +660,102 @@ public final class Main {
     }
 
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-
-
-        char star = settings.charAt(0);
-        Scanner scan = new Scanner(settings);
-        String[] rotorslst = new String[M.numRotors()];
-
-
-        if (star != '*') {
+     *  which must have the format specified in the assignment, except
+     *  that the rotor settings may be followed by a token of ring
+     *  settings of the same length, before any plugboard cycles. */
+    static void setUp(Machine M, String settings) {
+        if (settings.charAt(0) != '*') {
             throw new EnigmaException("Not being set up");
         }
-
-        if (scan.hasNext("[*]")) {
-
-            scan.next();
-
-            for (int i = 0; i < M.numRotors(); i++) {
-                rotorslst[i] = scan.next();
-            }
-            M.insertRotors(rotorslst);
-            String settng;
-            if (scan.hasNext()) {
-                settng = scan.next();
-            } else {
-                settng = "";
-            }
-
-            int num = M.numRotors() - 1;
-            if (settng.length() != num) {
-                throw new EnigmaException("Settings improperly formatted");
-            }
-            String plugboard = "";
-
-            M.setRotors(settng);
-            while (scan.hasNext()) {
-                plugboard += scan.next() + " ";
+        int end = tokenEnd(settings, 0);
+        if (end != 1) {
+            throw new EnigmaException("Settings improperly formatted");
+        }
+        String[] rotors = new String[M.numRotors()];
+        for (int i = 0; i < rotors.length; i++) {
+            int start = skipBlanks(settings, end);
+            if (start == settings.length()) {
+                throw error("too few rotors in settings line");
             }
+            end = tokenEnd(settings, start);
+            rotors[i] = settings.substring(start, end);
+        }
+        M.insertRotors(rotors);
+        int start = skipBlanks(settings, end);
+        end = tokenEnd(settings, start);
+        if (end - start != M.numRotors() - 1) {
+            throw new EnigmaException("Settings improperly formatted");
+        }
+        String setting = settings.substring(start, end);
+        String ring = null;
+        start = skipBlanks(settings, end);
+        if (start < settings.length() && settings.charAt(start) != '(') {
+            end = tokenEnd(settings, start);
+            ring = settings.substring(start, end);
+        }
+        if (ring == null) {
+            M.setRotors(setting);
+        } else {
+            M.setRotors(setting, ring);
+        }
+        M.setPlugboard(settings, end, settings.length());
+    }
 
-
-            M.setPlugboard(new Permutation(plugboard.
-                    substring(0, plugboard.length()),
-                    _alphabet));
-
-
-
+    /** Returns the index of the first character of S at or after START
+     *  that is not whitespace, or S.length() if there is none. */
+    private static int skipBlanks(String s, int start) {
+        while (start < s.length() && Character.isWhitespace(s.charAt(start))) {
+            start += 1;
         }
+        return start;
+    }
 
+    /** Returns the index just past the end of the token of S that starts
+     *  at START (or S.length() if START is S.length()). */
+    private static int tokenEnd(String s, int start) {
+        while (start < s.length()
+               && !Character.isWhitespace(s.charAt(start))) {
+            start += 1;
+        }
+        return start;
     }
 
 
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
-        if (msg.length() <= 5) {
-            _output.println(msg);
-        } else {
-            for (int i = 0; i < msg.length(); i += 5) {
-                int group = msg.length() - i;
-                if (group <= 5) {
-                    _output.println(msg.substring(i, i + group));
-                } else {
-                    _output.print(msg.substring(i, i + 5) + " ");
-                }
-            }
-        }
+        _output.write(msg);
+        _output.endLine();
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private LineReader _input;
 
     /** Source of machine configuration. */
     private Scanner _config;
 
-    /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    /** Name of the configuration file, next to which its compiled form is
+     *  cached. */
+    private Path _configPath;
+
+    /** Destination of encoded/decoded messages. */
+    private GroupedWriter _output;
+
+    /** File for encoded/decoded messages, or null if they go to the
+     *  standard output. */
+    private FileChannel _outputFile;
+
+    /** Number of threads converting messages in parallel, or 0 to
+     *  convert them serially. */
+    private int _threads;
+
+    /** Number of characters of input after which a new batch of blocks is
+     *  started for parallel conversion. */
+    private static final int BATCH_SIZE = 1 << 16;
+
+    /** Maximum number of batches per thread in the reorder buffer. */
+    private static final int MAX_PENDING = 4;
 }
@@ -0,0 +1,94 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/** The suite of all JUnit tests for the Main class.
+ *  @author Mohak Buch
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Directory for configuration, input and output files. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** A configuration for three-slot machines. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 3 1\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX)"
+        + " (SZ) (TV)\n";
+
+    /** Returns the output of Main, run with the option OPTION (if not
+     *  null) on INPUT with configuration CONFIG. */
+    private String run(String option, String input) throws IOException {
+        Path dir = folder.newFolder().toPath();
+        Path config = dir.resolve("config");
+        Path in = dir.resolve("input");
+        Path out = dir.resolve("output");
+        Files.write(config, CONFIG.getBytes());
+        Files.write(in, input.getBytes());
+        String[] files = { config.toString(), in.toString(), out.toString() };
+        String[] args = files;
+        if (option != null) {
+            args = new String[] { option, files[0], files[1], files[2] };
+        }
+        new Main(args).process();
+        return new String(Files.readAllBytes(out));
+    }
+
+    @Test
+    public void checkStarLine() throws IOException {
+        for (String option : new String[] { null, "--parallel=2" }) {
+            String[] lines =
+                run(option, "* B Beta I AA\nAB*CD\nHELLO\n").split("\n");
+            assertEquals(2, lines.length);
+            assertEquals("", lines[0]);
+            assertTrue(lines[1], lines[1].matches("[A-Z]{5}"));
+        }
+    }
+
+    @Test
+    public void checkLongLinesInParallel() throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 3 * LineReader.BUFFER_SIZE + 7; i += 1) {
+            line.append(i % 11 == 0 ? ' ' : (char) ('A' + i % 26));
+        }
+        String input = "* B Beta I AB CD\nHELLO WORLD\n" + line + "\n\n"
+            + line + "\n* B Beta I AC (AE)\n" + line + "\nHELLO\n";
+        String serial = run(null, input);
+        assertEquals(7, serial.split("\n", -1).length);
+        assertEquals(serial, run("--parallel=2", input));
+    }
+
+    @Test
+    public void checkStarInLongLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < LineReader.BUFFER_SIZE + 100; i += 1) {
+            line.append((char) ('A' + i % 26));
+        }
+        line.append('*');
+        for (String option : new String[] { null, "--parallel=2" }) {
+            try {
+                run(option, "* B Beta I AA\n" + line + "\n");
+                fail("converted a long line containing '*'");
+            } catch (EnigmaException excp) {
+                assertEquals("'*' in the middle of a long message line",
+                             excp.getMessage());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/** A Reader over a file that maps the file into memory a window at a time
+ *  and widens its bytes directly to characters for as long as they are
+ *  7-bit ASCII.  At the first byte that is not, it hands the rest of the
+ *  file to an ordinary decoding reader, so that the characters read are
+ *  always those an InputStreamReader in the same charset would produce.
+ *  @author Mohak Buch
+ */
+class MappedFileReader extends Reader {
+
+    /** A reader of the file open on CHANNEL, whose text is in CHARSET,
+     *  which must be ASCII-compatible (see isAsciiCompatible). */
+    MappedFileReader(FileChannel channel, Charset charset)
+        throws IOException {
+        _channel = channel;
+        _charset = charset;
+        _size = channel.size();
+    }
+
+    /** Returns true iff every 7-bit ASCII byte stands for the same
+     *  character in CHARSET, whatever precedes it, so that such bytes may
+     *  be widened directly. */
+    static boolean isAsciiCompatible(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8)
+            || charset.equals(StandardCharsets.ISO_8859_1)
+            || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (_rest != null) {
+            return _rest.read(cbuf, off, len);
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (_window == null || !_window.hasRemaining()) {
+            long next = _window == null ? 0 : _start + _window.limit();
+            if (next == _size) {
+                return -1;
+            }
+            _start = next;
+            _window = _channel.map(FileChannel.MapMode.READ_ONLY, _start,
+                                   Math.min(WINDOW_SIZE, _size - _start));
+        }
+        MappedByteBuffer window = _window;
+        int p = window.position();
+        int end = Math.min(window.limit(), p + len);
+        int k;
+        for (k = 0; p < end; k += 1, p += 1) {
+            byte b = window.get(p);
+            if (b < 0) {
+                break;
+            }
+            cbuf[off + k] = (char) b;
+        }
+        window.position(p);
+        if (k == 0 && p < end) {
+            _channel.position(_start + p);
+            _rest = new InputStreamReader(Channels.newInputStream(_channel),
+                                          _charset);
+            _window = null;
+            return _rest.read(cbuf, off, len);
+        }
+        return k;
+    }
+
+    @Override
+    public void close() throws IOException {
+        _window = null;
+        _channel.close();
+    }
+
+    /** Largest number of bytes mapped at once. */
+    static final int WINDOW_SIZE = 1 << 28;
+
+    /** The file being read. */
+    private final FileChannel _channel;
+
+    /** Charset of the file's text. */
+    private final Charset _charset;
+
+    /** Size of the file, in bytes. */
+    private final long _size;
+
+    /** The currently mapped part of the file, or null if none is mapped
+     *  yet. */
+    private MappedByteBuffer _window;
+
+    /** Position in the file of the start of _window. */
+    private long _start;
+
+    /** Reader of the rest of the file once a byte that is not ASCII has
+     *  been seen, or null before then. */
+    private Reader _rest;
+
+}
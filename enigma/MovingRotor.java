@@ -18,7 +18,13 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _perm = perm;
-        _notches = notches;
+        _notched = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i++) {
+            int k = perm.alphabet().toInt(notches.charAt(i));
+            if (k >= 0) {
+                _notched[k] = true;
+            }
+        }
     }
 
 
@@ -32,12 +38,12 @@ class MovingRotor extends Rotor {
      * @return whether or not rotor is at a notch
      */
     boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i++) {
-            if (alphabet().toInt(_notches.charAt(i)) == setting()) {
-                return true;
-            }
-        }
-        return false;
+        return _notched[setting()];
+    }
+
+    @Override
+    boolean[] notches() {
+        return _notched;
     }
     @Override
     /**
@@ -47,10 +53,10 @@ class MovingRotor extends Rotor {
         return true;
     }
 
-    /** *
-     * @return notches
+    /**
+     * @return _notched[K] is true iff setting K is at a notch
      */
-    private String _notches;
+    private final boolean[] _notched;
     /**
      * @return permutation
      */
@@ -0,0 +1,169 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import static enigma.EnigmaException.*;
+
+/** Log-probabilities of the n-grams (runs of N consecutive characters) of
+ *  a language, for scoring candidate decryptions.  They are kept in one
+ *  flat table indexed by n-gram number: over an alphabet of size S, the
+ *  n-gram of character indices C1 C2 ... CN has number
+ *  (...((C1 * S + C2) * S + C3)...) * S + CN.  N-grams never seen get a
+ *  floor well below the rarest seen one.
+ *  @author Mohak Buch
+ */
+class NGrams {
+
+    /** The N-grams of TEXT over ALPHABET.  Characters outside ALPHABET
+     *  are skipped, after trying their upper-case forms, so n-grams run on
+     *  across blanks and punctuation, as in a message sent without
+     *  them. */
+    static NGrams train(Alphabet alphabet, int n, CharSequence text) {
+        long[] counts = new long[tableSize(alphabet, n)];
+        int size = alphabet.size();
+        int mod = counts.length / size;
+        int gram = 0, run = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            int c = alphabet.toInt(ch);
+            if (c < 0) {
+                c = alphabet.toInt(Character.toUpperCase(ch));
+            }
+            if (c >= 0) {
+                gram = gram % mod * size + c;
+                run += 1;
+                if (run >= n) {
+                    counts[gram] += 1;
+                }
+            }
+        }
+        return new NGrams(alphabet, n, counts);
+    }
+
+    /** The n-grams over ALPHABET whose counts are given by the lines of
+     *  IN, each an n-gram and its count separated by blanks, as in
+     *  published n-gram frequency lists.  All the n-grams must have the
+     *  same length. */
+    static NGrams read(Alphabet alphabet, BufferedReader in)
+        throws IOException {
+        long[] counts = null;
+        int n = 0;
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            String[] fields = line.trim().split("\\s+");
+            if (fields.length == 1 && fields[0].isEmpty()) {
+                continue;
+            } else if (fields.length != 2) {
+                throw error("bad n-gram count line: %s", line);
+            }
+            if (counts == null) {
+                n = fields[0].length();
+                counts = new long[tableSize(alphabet, n)];
+            } else if (fields[0].length() != n) {
+                throw error("n-gram %s is not of length %d", fields[0], n);
+            }
+            int gram = 0;
+            for (int i = 0; i < n; i += 1) {
+                int c = alphabet.toInt(fields[0].charAt(i));
+                if (c < 0) {
+                    throw error("character not in alphabet: %c",
+                                fields[0].charAt(i));
+                }
+                gram = gram * alphabet.size() + c;
+            }
+            try {
+                counts[gram] += Long.parseLong(fields[1]);
+            } catch (NumberFormatException excp) {
+                throw error("bad n-gram count: %s", fields[1]);
+            }
+        }
+        if (counts == null) {
+            throw error("no n-grams");
+        }
+        return new NGrams(alphabet, n, counts);
+    }
+
+    /** The N-grams over ALPHABET that occur COUNTS[K] times, where K is
+     *  the n-gram number. */
+    private NGrams(Alphabet alphabet, int n, long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            throw error("no n-grams");
+        }
+        _alphabet = alphabet;
+        _n = n;
+        _logProbs = new float[counts.length];
+        float floor = (float) Math.log10(UNSEEN / total);
+        for (int k = 0; k < counts.length; k += 1) {
+            _logProbs[k] = counts[k] == 0 ? floor
+                : (float) Math.log10((double) counts[k] / total);
+        }
+    }
+
+    /** Returns the number of n-grams of length N over ALPHABET. */
+    private static int tableSize(Alphabet alphabet, int n) {
+        if (n <= 0) {
+            throw error("n-gram length must be positive");
+        }
+        long size = 1;
+        for (int i = 0; i < n; i += 1) {
+            size *= alphabet.size();
+            if (size > MAX_TABLE_SIZE) {
+                throw error("too many %d-grams over this alphabet", n);
+            }
+        }
+        return (int) size;
+    }
+
+    /** Returns the alphabet of my n-grams. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Returns the length of my n-grams. */
+    int n() {
+        return _n;
+    }
+
+    /** Returns the log (base 10) probability of n-gram number GRAM. */
+    float logProbability(int gram) {
+        return _logProbs[gram];
+    }
+
+    /** Returns the sum of the log probabilities of the n-grams of the
+     *  LEN character indices in TEXT: the higher, the more TEXT looks like
+     *  my language. */
+    double score(int[] text, int len) {
+        float[] logProbs = _logProbs;
+        int size = _alphabet.size(), mod = logProbs.length / size;
+        int gram = 0;
+        double sum = 0;
+        for (int i = 0; i < len; i += 1) {
+            gram = gram % mod * size + text[i];
+            if (i >= _n - 1) {
+                sum += logProbs[gram];
+            }
+        }
+        return sum;
+    }
+
+    /** Count given to an n-gram never seen. */
+    private static final double UNSEEN = 0.01;
+
+    /** Largest number of entries in a table. */
+    private static final long MAX_TABLE_SIZE = 1 << 28;
+
+    /** Alphabet of my n-grams. */
+    private final Alphabet _alphabet;
+
+    /** Length of my n-grams. */
+    private final int _n;
+
+    /** Log probabilities, indexed by n-gram number. */
+    private final float[] _logProbs;
+
+}
@@ -1,5 +1,4 @@
 package enigma;
-import java.util.HashMap;
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
@@ -14,45 +13,153 @@ class Permutation {
      * form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
      * is interpreted as a permutation in cycle notation.  Characters in the
      * alphabet that are not included in any cycle map to themselves.
-     * Whitespace is ignored.
+     * Whitespace is ignored.  Any character of ALPHABET other than
+     * whitespace and parentheses may appear in a cycle, but only once.
      */
 
     Permutation(String cycles, Alphabet alphabet) {
 
         _alphabet = alphabet;
-        result = new HashMap<>();
-        reverse = new HashMap<>();
-        _cycles = cycles;
-        char first = ' ';
-        for (int i = 0; i < cycles.length(); i++) {
-            char c = _cycles.charAt(i);
-            if (c == '(' && Character.isLetter(_cycles.charAt(i + 1))) {
-                first = _cycles.charAt(i + 1);
+        int n = alphabet.size();
+        int[] forward = new int[n], inverse = new int[n];
+        for (int i = 0; i < n; i++) {
+            forward[i] = i;
+            inverse[i] = i;
+        }
+        _cycleType = new int[n + 1];
+        int listed = parseCycles(cycles, 0, cycles.length(), alphabet,
+                                 forward, inverse, null, _cycleType);
+        _cycleType[1] += n - listed;
+        Kind kind = Kind.IDENTITY;
+        for (int k = 2; k <= n; k++) {
+            if (_cycleType[k] != 0) {
+                kind = k == 2 ? Kind.INVOLUTION : Kind.GENERAL;
             }
-            if (Character.isLetter(_cycles.charAt(i))) {
-                if (Character.isLetter(_cycles.charAt(i + 1))) {
-                    result.put(_cycles.charAt(i), _cycles.charAt(i + 1));
-                    reverse.put(_cycles.charAt(i + 1), _cycles.charAt(i));
+        }
+        _kind = kind;
+        _forward = forward;
+        _forwardChars = new char[n];
+        for (int i = 0; i < n; i++) {
+            _forwardChars[i] = alphabet.toChar(forward[i]);
+        }
+        if (kind == Kind.GENERAL) {
+            _inverse = inverse;
+            _inverseChars = new char[n];
+            for (int i = 0; i < n; i++) {
+                _inverseChars[i] = alphabet.toChar(inverse[i]);
+            }
+        } else {
+            _inverse = forward;
+            _inverseChars = _forwardChars;
+        }
+    }
+
+    /** The kinds of permutation, from most to least specialized. */
+    enum Kind {
+        /** Every character maps to itself. */
+        IDENTITY,
+        /** Every character is in a cycle of length 1 or 2, so the
+         *  permutation is its own inverse. */
+        INVOLUTION,
+        /** Any other permutation. */
+        GENERAL
+    }
+
+    /** Apply the cycles in characters START .. END-1 of TEXT, in the
+     *  form accepted by my constructor, to the tables FORWARD and INVERSE
+     *  of a permutation of ALPHABET, which must map every character that
+     *  appears in a cycle to itself.  Each character mapped, and the
+     *  character it is mapped to, are recorded in TOUCHED (if not null)
+     *  while there is room.  Element K of CYCLETYPE (if not null) is
+     *  increased by the number of cycles of length K.  Returns the number
+     *  of characters mapped; the number recorded in TOUCHED is twice that,
+     *  up to its length.  Errors report the position in TEXT at which
+     *  they were found; the tables may then be partly updated. */
+    static int parseCycles(CharSequence text, int start, int end,
+                           Alphabet alphabet, int[] forward, int[] inverse,
+                           int[] touched, int[] cycleType) {
+        long[] seen = new long[(alphabet.size() + 63) >>> 6];
+        int count = 0, open = -1, first = 0, prev = 0, len = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                continue;
+            } else if (c == '(') {
+                if (open >= 0) {
+                    throw error("nested '(' at position %d", i);
+                }
+                open = i;
+                len = 0;
+            } else if (c == ')') {
+                if (open < 0) {
+                    throw error("unmatched ')' at position %d", i);
+                }
+                if (len > 0) {
+                    forward[prev] = first;
+                    inverse[first] = prev;
+                    count = record(touched, count, prev, first);
+                    if (cycleType != null) {
+                        cycleType[len] += 1;
+                    }
+                }
+                open = -1;
+            } else {
+                int x = alphabet.toInt(c);
+                if (open < 0) {
+                    throw error("'%c' outside a cycle at position %d", c, i);
+                } else if (x < 0) {
+                    throw error("character not in alphabet: %c at position %d",
+                                c, i);
+                } else if ((seen[x >>> 6] & (1L << x)) != 0) {
+                    throw error("duplicate character %c at position %d",
+                                c, i);
+                }
+                seen[x >>> 6] |= 1L << x;
+                if (len == 0) {
+                    first = x;
                 } else {
-                    result.put(_cycles.charAt(i), first);
-                    reverse.put(first, _cycles.charAt(i));
+                    forward[prev] = x;
+                    inverse[x] = prev;
+                    count = record(touched, count, prev, x);
                 }
-
+                prev = x;
+                len += 1;
             }
+        }
+        if (open >= 0) {
+            throw error("unclosed '(' at position %d", open);
+        }
+        return count;
+    }
 
+    /** Record in TOUCHED (if not null), as mapping number COUNT, that F
+     *  is mapped to T, if there is room.  Returns COUNT + 1. */
+    private static int record(int[] touched, int count, int f, int t) {
+        if (touched != null && 2 * count + 1 < touched.length) {
+            touched[2 * count] = f;
+            touched[2 * count + 1] = t;
         }
-        splitCycles = _cycles.trim().replace("(", "")
-                .replace(")", "").split(" ");
-    }
-    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        for (int i = 0; i < cycle.length(); i++) {
-            if (cycle.length() == 1) {
-                char c = _alphabet.toChar(cycle.charAt(i));
-                result.put(c, alphabet().toChar(cycle.charAt(0)));
-            }
+        return count + 1;
+    }
+
+    /** Returns the permutation table TABLE conjugated by a rotation of
+     *  SHIFT (0 <= SHIFT < TABLE.length): its element (K + SHIFT) mod N is
+     *  (TABLE[K] + SHIFT) mod N, where N is TABLE.length.  Passing a
+     *  character through the result at setting S is the same as passing
+     *  it through TABLE at setting S - SHIFT, which is how a ring setting
+     *  of SHIFT acts.  Returns TABLE itself if SHIFT is 0. */
+    static int[] rotated(int[] table, int shift) {
+        if (shift == 0) {
+            return table;
+        }
+        int n = table.length;
+        int[] result = new int[n];
+        for (int k = 0; k < n; k++) {
+            int x = k + shift >= n ? k + shift - n : k + shift;
+            int y = table[k] + shift;
+            result[x] = y >= n ? y - n : y;
         }
+        return result;
     }
 
     /** Return the value of P modulo the size of this permutation. *
@@ -79,11 +186,7 @@ class Permutation {
      * @return result of applying permutation to p module alphabet size.
      *  */
     int permute(int p) {
-        if (result.containsKey(_alphabet.toChar(wrap(p)))) {
-            return _alphabet.toInt(result.get(_alphabet.toChar(wrap(p))));
-        }
-        return p;
-
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation.
@@ -91,11 +194,7 @@ class Permutation {
      *  @return inverse of permutation.
      *  */
     int invert(int c) {
-        if (reverse.containsKey(_alphabet.toChar(wrap(c)))) {
-            return _alphabet.toInt(reverse.get(_alphabet.toChar(wrap(c))));
-        }
-        return c;
-
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -103,11 +202,11 @@ class Permutation {
      * @return applied permutation to index of p.
      *  */
     char permute(char p) {
-        if (result.containsKey(p)) {
-            return result.get(p);
+        int i = _alphabet.toInt(p);
+        if (i < 0) {
+            return p;
         }
-        return p;
-
+        return _forwardChars[i];
     }
 
 
@@ -115,11 +214,23 @@ class Permutation {
      * @return inverse of permutation.
      * */
     char invert(char c) {
-        if (reverse.containsKey(c)) {
-            return reverse.get(c);
+        int i = _alphabet.toInt(c);
+        if (i < 0) {
+            return c;
         }
-        return c;
+        return _inverseChars[i];
+    }
 
+    /** Return my forward table, whose element K is permute(K).  Callers
+     *  must not modify the result. */
+    int[] forwardTable() {
+        return _forward;
+    }
+
+    /** Return my inverse table, whose element K is invert(K).  Callers
+     *  must not modify the result. */
+    int[] inverseTable() {
+        return _inverse;
     }
 
     /** Return the alphabet used to initialize this Permutation.
@@ -135,32 +246,38 @@ class Permutation {
      * @return true when no value maps to itself.
      *  */
     boolean derangement() {
+        return _cycleType[1] == 0;
+    }
 
-        int count = 0;
-        for (int i = 0; i < splitCycles.length; i++) {
-            count += splitCycles[i].length();
-            if (splitCycles[i].length() == 1) {
-                return false;
-            }
-        }
-
-        if (count == _alphabet.size()) {
-            return true;
-        }
-        return false;
+    /** Return the most specialized kind of permutation I am.  The
+     *  inverse table of an IDENTITY or INVOLUTION is the same array as
+     *  its forward table. */
+    Kind kind() {
+        return _kind;
+    }
 
+    /** Return my cycle type: element K is the number of my cycles of
+     *  length K, counting each character that maps to itself as a cycle
+     *  of length 1.  Callers must not modify the result. */
+    int[] cycleType() {
+        return _cycleType;
     }
 
-    /** @return cycles*/
-    private String _cycles;
     /** @return alphabet*/
     private Alphabet _alphabet;
-    /** @return hashmap of rotors*/
-    private HashMap<Character, Character> result;
-    /** @return reverse hashmap of rotors*/
-    private HashMap<Character, Character> reverse;
-    /** @return splitcycles*/
-    private String[]  splitCycles;
+    /** @return forward table: index K maps to _forward[K]*/
+    private final int[] _forward;
+    /** @return inverse table: index K maps to _inverse[K], which is
+     *  _forward itself unless I am GENERAL*/
+    private final int[] _inverse;
+    /** @return _forward as characters of my alphabet*/
+    private final char[] _forwardChars;
+    /** @return _inverse as characters of my alphabet*/
+    private final char[] _inverseChars;
+    /** @return the most specialized kind of permutation I am*/
+    private final Kind _kind;
+    /** @return cycle type: element K is the number of cycles of length K*/
+    private final int[] _cycleType;
 
 
 }
@@ -149,5 +149,48 @@ public class PermutationTest {
         assertEquals(p.derangement(), false);
     }
 
+    @Test
+    public void testNonLetterAlphabet() {
+        Permutation p = new Permutation("(0A.) (19)", new Alphabet("019A."));
+        assertEquals('A', p.permute('0'));
+        assertEquals('.', p.permute('A'));
+        assertEquals('0', p.permute('.'));
+        assertEquals('9', p.permute('1'));
+        assertEquals('1', p.invert('9'));
+        assertTrue(p.derangement());
+        assertArrayEquals(new int[] {0, 0, 1, 1, 0, 0}, p.cycleType());
+    }
+
+    @Test
+    public void testMalformedCycles() {
+        Alphabet abc = new Alphabet("ABCD");
+        String[] bad = { "(AB", "(AB) (BC)", "(AB) C", "(A(B))", "(AE)",
+                         "AB)" };
+        String[] where = { "position 0", "position 6", "position 5",
+                           "position 2", "position 2", "position 0" };
+        for (int k = 0; k < bad.length; k += 1) {
+            try {
+                new Permutation(bad[k], abc);
+                fail("accepted " + bad[k]);
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage(),
+                           excp.getMessage().endsWith(where[k]));
+            }
+        }
+    }
+
+    @Test
+    public void testKinds() {
+        Alphabet abcd = new Alphabet("ABCD");
+        Permutation id = new Permutation("(A) (B)", abcd);
+        Permutation inv = new Permutation("(AC) (B)", abcd);
+        Permutation gen = new Permutation("(ACB)", abcd);
+        assertEquals(Permutation.Kind.IDENTITY, id.kind());
+        assertEquals(Permutation.Kind.INVOLUTION, inv.kind());
+        assertEquals(Permutation.Kind.GENERAL, gen.kind());
+        assertSame(inv.forwardTable(), inv.inverseTable());
+        assertEquals('A', inv.invert('C'));
+        assertEquals('B', gen.invert('A'));
+    }
 
 }
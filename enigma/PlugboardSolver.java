@@ -0,0 +1,256 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A hill-climbing search for the plugboard of a message whose rotors and
+ *  settings are known, as KeySearch finds them.  The mappings the rotors
+ *  apply on each keystroke are computed once; each trial plugboard then
+ *  decrypts the message with three table lookups per character and is
+ *  scored by the n-gram log-probabilities of the result.  Starting from
+ *  an empty plugboard, the search repeatedly tries rewiring every pair of
+ *  characters, keeping any change that raises the score, until no change
+ *  does.
+ *  @author Mohak Buch
+ */
+class PlugboardSolver {
+
+    /** Recover a plugboard as described by ARGS: CONFIG CIPHERTEXT NGRAMS
+     *  SETTINGS [N [PAIRS]], where CONFIG is a configuration file,
+     *  CIPHERTEXT a file holding the message, NGRAMS either a list of
+     *  n-gram counts (one n-gram and its count per line) or a sample text
+     *  to count N-grams in (default 4), SETTINGS a settings line giving
+     *  the rotors and settings, and PAIRS the most plugs to use (default
+     *  10).  Prints the completed settings line and the decryption. */
+    public static void main(String... args) {
+        if (args.length < 4 || args.length > 6) {
+            System.err.println("Usage: java enigma.PlugboardSolver CONFIG "
+                               + "CIPHERTEXT NGRAMS SETTINGS [N [PAIRS]]");
+            System.exit(1);
+        }
+        try {
+            Machine mach = new Main(new String[] { args[0] }).readConfig();
+            Main.setUp(mach, args[3]);
+            String cipher = new String(Files.readAllBytes(Paths.get(args[1])));
+            NGrams grams = readNGrams(
+                mach.spec().alphabet(), Paths.get(args[2]),
+                args.length > 4 ? Integer.parseInt(args[4]) : 4);
+            PlugboardSolver solver = new PlugboardSolver(mach, cipher, grams);
+            String plugboard = solver.solve(
+                args.length > 5 ? Integer.parseInt(args[5]) : 10);
+            String rotors = args[3].replaceAll("\\(.*", "").trim();
+            System.out.println(rotors + " " + plugboard);
+            System.out.println(solver.plaintext());
+        } catch (EnigmaException | IOException | NumberFormatException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Returns the n-grams over ALPHABET in FILE: its counts, if its lines
+     *  are n-grams and counts, and otherwise the N-grams of its text. */
+    private static NGrams readNGrams(Alphabet alphabet, Path file, int n)
+        throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file)) {
+            String first = in.readLine();
+            if (first != null && first.trim().matches("\\S+\\s+\\d+")) {
+                try (BufferedReader all = Files.newBufferedReader(file)) {
+                    return NGrams.read(alphabet, all);
+                }
+            }
+        }
+        return NGrams.train(alphabet, n,
+                            new String(Files.readAllBytes(file)));
+    }
+
+    /** A solver for the plugboard of CIPHERTEXT, sent on MACH with its
+     *  current rotors and settings, scoring decryptions with GRAMS.
+     *  MACH's own plugboard is ignored, and MACH is not changed.
+     *  Characters of CIPHERTEXT outside the alphabet are ignored. */
+    PlugboardSolver(Machine mach, String ciphertext, NGrams grams) {
+        _alphabet = mach.spec().alphabet();
+        if (!sameAlphabet(grams.alphabet(), _alphabet)) {
+            throw error("n-grams are over a different alphabet");
+        }
+        _grams = grams;
+        int[] cipher = new int[ciphertext.length()];
+        int len = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            int c = _alphabet.toInt(ciphertext.charAt(i));
+            if (c >= 0) {
+                cipher[len++] = c;
+            }
+        }
+        _cipher = Arrays.copyOf(cipher, len);
+        _scramblers = mach.scramblers(len);
+        _plain = new int[len];
+        _plug = new int[_alphabet.size()];
+        for (int x = 0; x < _plug.length; x += 1) {
+            _plug[x] = x;
+        }
+    }
+
+    /** Returns true iff A and B have the same characters in the same
+     *  order. */
+    private static boolean sameAlphabet(Alphabet a, Alphabet b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i += 1) {
+            if (a.toChar(i) != b.toChar(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Search for the plugboard, of at most MAXPAIRS pairs, that gives the
+     *  best-scoring decryption, and return it in the cycle notation of a
+     *  settings line. */
+    String solve(int maxPairs) {
+        int n = _plug.length;
+        int[] plug = _plug;
+        for (int x = 0; x < n; x += 1) {
+            plug[x] = x;
+        }
+        int pairs = 0;
+        double best = rescore();
+        int[] saved = new int[n];
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int a = 0; a < n; a += 1) {
+                for (int b = a + 1; b < n; b += 1) {
+                    for (int variant = 0; variant < 2; variant += 1) {
+                        System.arraycopy(plug, 0, saved, 0, n);
+                        int changed = rewire(a, b, variant == 1, pairs);
+                        if (changed < 0) {
+                            continue;
+                        }
+                        if (changed <= maxPairs) {
+                            double score = rescore();
+                            if (score > best) {
+                                best = score;
+                                pairs = changed;
+                                improved = true;
+                                break;
+                            }
+                        }
+                        System.arraycopy(saved, 0, plug, 0, n);
+                    }
+                }
+            }
+        }
+        _score = best;
+        rescore();
+        return plugboard();
+    }
+
+    /** Rewire my trial plugboard, which has PAIRS pairs, for the
+     *  characters A and B: if they are plugged together, unplug them;
+     *  otherwise unplug each from its partner and plug them together, and
+     *  if PARTNERS, plug their former partners together too.  Returns the
+     *  resulting number of pairs, or -1 if the move does not apply. */
+    private int rewire(int a, int b, boolean partners, int pairs) {
+        int[] plug = _plug;
+        int a1 = plug[a], b1 = plug[b];
+        if (a1 == b) {
+            if (partners) {
+                return -1;
+            }
+            plug[a] = a;
+            plug[b] = b;
+            return pairs - 1;
+        }
+        if (partners && (a1 == a || b1 == b)) {
+            return -1;
+        }
+        if (a1 != a) {
+            plug[a1] = a1;
+            pairs -= 1;
+        }
+        if (b1 != b) {
+            plug[b1] = b1;
+            pairs -= 1;
+        }
+        plug[a] = b;
+        plug[b] = a;
+        pairs += 1;
+        if (partners) {
+            plug[a1] = b1;
+            plug[b1] = a1;
+            pairs += 1;
+        }
+        return pairs;
+    }
+
+    /** Decrypt the message into _plain with my trial plugboard and return
+     *  the score of the result. */
+    private double rescore() {
+        int[] plug = _plug, cipher = _cipher, scramblers = _scramblers;
+        int[] plain = _plain;
+        int n = plug.length;
+        for (int t = 0, k = 0; t < cipher.length; t += 1, k += n) {
+            plain[t] = plug[scramblers[k + plug[cipher[t]]]];
+        }
+        return _grams.score(plain, plain.length);
+    }
+
+    /** Returns my trial plugboard in cycle notation. */
+    private String plugboard() {
+        StringBuilder result = new StringBuilder();
+        for (int x = 0; x < _plug.length; x += 1) {
+            if (_plug[x] > x) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(').append(_alphabet.toChar(x))
+                    .append(_alphabet.toChar(_plug[x])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Returns the score of the decryption with the plugboard last found
+     *  by solve. */
+    double score() {
+        return _score;
+    }
+
+    /** Returns the decryption with the plugboard last found by solve. */
+    String plaintext() {
+        char[] text = new char[_plain.length];
+        for (int t = 0; t < text.length; t += 1) {
+            text[t] = _alphabet.toChar(_plain[t]);
+        }
+        return new String(text);
+    }
+
+    /** Alphabet of the message. */
+    private final Alphabet _alphabet;
+
+    /** Scores of decryptions. */
+    private final NGrams _grams;
+
+    /** The ciphertext, as alphabet indices. */
+    private final int[] _cipher;
+
+    /** Rotor mappings on each keystroke, as from Machine.scramblers. */
+    private final int[] _scramblers;
+
+    /** The trial plugboard, as a table that is its own inverse. */
+    private final int[] _plug;
+
+    /** Decryption with the trial plugboard. */
+    private final int[] _plain;
+
+    /** Score of the plugboard last found by solve. */
+    private double _score;
+
+}
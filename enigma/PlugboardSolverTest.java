@@ -0,0 +1,75 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PlugboardSolver and NGrams
+ *  classes.
+ *  @author Mohak Buch
+ */
+public class PlugboardSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** English text to count n-grams in, unrelated to the messages the
+     *  tests decrypt. */
+    static final String SAMPLE =
+        "IT WAS THE BEST OF TIMES IT WAS THE WORST OF TIMES IT WAS THE AGE "
+        + "OF WISDOM IT WAS THE AGE OF FOOLISHNESS IT WAS THE EPOCH OF "
+        + "BELIEF IT WAS THE EPOCH OF INCREDULITY IT WAS THE SEASON OF LIGHT "
+        + "IT WAS THE SEASON OF DARKNESS IT WAS THE SPRING OF HOPE IT WAS "
+        + "THE WINTER OF DESPAIR WE HAD EVERYTHING BEFORE US WE HAD NOTHING "
+        + "BEFORE US WE WERE ALL GOING DIRECT TO HEAVEN WE WERE ALL GOING "
+        + "DIRECT THE OTHER WAY IN SHORT THE PERIOD WAS SO FAR LIKE THE "
+        + "PRESENT PERIOD THAT SOME OF ITS NOISIEST AUTHORITIES INSISTED ON "
+        + "ITS BEING RECEIVED FOR GOOD OR FOR EVIL IN THE SUPERLATIVE DEGREE "
+        + "OF COMPARISON ONLY THERE WERE A KING WITH A LARGE JAW AND A QUEEN "
+        + "WITH A PLAIN FACE ON THE THRONE OF ENGLAND THERE WERE A KING WITH "
+        + "A LARGE JAW AND A QUEEN WITH A FAIR FACE ON THE THRONE OF FRANCE "
+        + "IN BOTH COUNTRIES IT WAS CLEARER THAN CRYSTAL TO THE LORDS OF THE "
+        + "STATE PRESERVES OF LOAVES AND FISHES THAT THINGS IN GENERAL WERE "
+        + "SETTLED FOR EVER";
+
+    @Test
+    public void checkNGramTables() throws IOException {
+        NGrams grams = NGrams.train(new Alphabet("AB"), 2, "aab, b ab");
+        assertEquals(2, grams.n());
+        assertEquals(Math.log10(1.0 / 5), grams.logProbability(0), 1e-6);
+        assertEquals(Math.log10(2.0 / 5), grams.logProbability(1), 1e-6);
+        assertEquals(grams.logProbability(0) + grams.logProbability(1),
+                     grams.score(new int[] { 0, 0, 1 }, 3), 1e-6);
+        NGrams read = NGrams.read(new Alphabet("AB"), new BufferedReader(
+            new StringReader("AA 1\nAB 2\n\nBB 1\nBA 1\n")));
+        for (int gram = 0; gram < 4; gram += 1) {
+            assertEquals(grams.logProbability(gram),
+                         read.logProbability(gram), 1e-6);
+        }
+    }
+
+    @Test
+    public void checkRecoversPlugboard() {
+        String plugboard = "(AE) (HQ) (IP) (RT)";
+        Machine mach = MachineTest.navalMachine("B Beta III IV I", "AXLE",
+                                                plugboard);
+        String cipher = mach.convert(KeySearchTest.PLAIN);
+        Machine rotorsOnly = MachineTest.navalMachine("B Beta III IV I",
+                                                      "AXLE", "(QZ)");
+        NGrams grams = NGrams.train(UPPER, 3, SAMPLE);
+        PlugboardSolver solver =
+            new PlugboardSolver(rotorsOnly, cipher, grams);
+        assertEquals(plugboard, solver.solve(10));
+        assertEquals(KeySearchTest.PLAIN.replace(" ", ""), solver.plaintext());
+        assertTrue(solver.score() < 0);
+    }
+
+}
@@ -8,18 +8,14 @@ import static enigma.EnigmaException.*;
 class Reflector extends FixedRotor {
 
     /** A non-moving rotor named NAME whose permutation at the 0 setting
-     * is PERM. */
-    private Permutation _perm;
-
-    /**
+     * is PERM.  A reflector's wiring is normally an involution, in which
+     * case PERM keeps a single table for both directions.
      *
      * @param name of reflector
      * @param perm is the permutation
      */
     Reflector(String name, Permutation perm) {
         super(name, perm);
-        _perm = perm;
-
     }
 
     /**
@@ -83,6 +83,13 @@ class Rotor {
         return false;
     }
 
+    /** Return a table, indexed by setting, that is true at each setting
+     *  in which I am at a notch, or null if I have no notches.  Callers
+     *  must not modify the result. */
+    boolean[] notches() {
+        return null;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
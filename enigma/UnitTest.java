@@ -11,7 +11,16 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      MachineTest.class,
+                                      GroupedWriterTest.class,
+                                      EnigmaServerTest.class,
+                                      ConfigCacheTest.class,
+                                      KeySearchTest.class,
+                                      PlugboardSolverTest.class,
+                                      BombeTest.class,
+                                      CribDragTest.class,
+                                      MainTest.class));
     }
 
 }
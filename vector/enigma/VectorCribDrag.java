@@ -0,0 +1,53 @@
+package enigma;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/** The vectorized comparisons of CribDrag.  This class is compiled
+ *  separately from the rest of the package, with "--add-modules
+ *  jdk.incubator.vector" (see the Makefile's vector target), and CribDrag
+ *  loads it reflectively, only when that module is present.  Each step
+ *  takes the next vector of offsets and, for each crib position, compares
+ *  the ciphertext under it at all those offsets with the crib character,
+ *  stopping as soon as every offset has a match.  The crib is short, so
+ *  its loads stay in cache and the scan proceeds at close to the speed
+ *  at which the ciphertext can be read.
+ *  @author Mohak Buch
+ */
+class VectorCribDrag implements CribDrag.Filter {
+
+    @Override
+    public int[] offsets(byte[] cipher, byte[] crib) {
+        int count = cipher.length - crib.length + 1;
+        if (count <= 0) {
+            return new int[0];
+        }
+        int lanes = SPECIES.length();
+        long allLanes = lanes == Long.SIZE ? -1L : (1L << lanes) - 1;
+        int[] result = new int[count];
+        int found = 0;
+        int offset;
+        for (offset = 0; offset <= count - lanes; offset += lanes) {
+            VectorMask<Byte> hit = SPECIES.maskAll(false);
+            for (int i = 0; i < crib.length && !hit.allTrue(); i += 1) {
+                hit = hit.or(ByteVector.fromArray(SPECIES, cipher, offset + i)
+                             .eq(crib[i]));
+            }
+            for (long free = ~hit.toLong() & allLanes; free != 0;
+                 free &= free - 1) {
+                result[found++] = offset + Long.numberOfTrailingZeros(free);
+            }
+        }
+        int[] rest = CribDrag.offsets(cipher, crib, offset);
+        System.arraycopy(rest, 0, result, found, rest.length);
+        return Arrays.copyOf(result, found + rest.length);
+    }
+
+    /** The widest vectors of bytes that are efficient on this machine. */
+    private static final VectorSpecies<Byte> SPECIES =
+        ByteVector.SPECIES_PREFERRED;
+
+}